@@ -0,0 +1,329 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * writes a file on a background thread, so that the thread that encodes the
+ * output does not wait for the disk. The data is written into one of several
+ * large direct buffers; when the buffer is full, it is handed to the background
+ * thread, which writes it to the file with a FileChannel, and writing goes on
+ * in the next buffer. The encoding thread only waits when every buffer is
+ * waiting to be written, and the time that it waits (the "write stall") is
+ * counted in GridRipperMetrics, to show whether the disk is holding up the
+ * ripping.
+ * 
+ * An error writing the file is thrown by the next call to write, flush or
+ * close.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+class GridRipperAsyncFileOutput extends OutputStream
+{
+   /**
+    * create (or replace) the file
+    */
+   GridRipperAsyncFileOutput(final File target) throws IOException
+   {
+      this(new FileOutputStream(target).getChannel(), _DEFAULT_BUFFERS, _DEFAULT_BUFFER_SIZE);
+   }
+   
+   /**
+    * continue an existing file
+    * 
+    * @param length
+    *           where to continue writing; anything in the file after this is
+    *           removed
+    */
+   GridRipperAsyncFileOutput(final File target, final long length) throws IOException
+   {
+      this(openAt(target, length), _DEFAULT_BUFFERS, _DEFAULT_BUFFER_SIZE);
+   }
+   
+   /**
+    * @param channel
+    *           the file, at the position to start writing
+    * @param buffers
+    *           the number of buffers (at least 2: one to fill while the other
+    *           is written)
+    * @param bufferSize
+    *           the size of each buffer, in bytes
+    */
+   private GridRipperAsyncFileOutput(final FileChannel channel, final int buffers, final int bufferSize)
+   {
+      this.channel = channel;
+      this.buffers = buffers < 2 ? 2 : buffers;
+      free = new ArrayBlockingQueue<ByteBuffer>(this.buffers);
+      full = new ArrayBlockingQueue<ByteBuffer>(this.buffers + 1);
+      for(int i = 1; i < this.buffers; i++)
+      {
+         free.add(ByteBuffer.allocateDirect(bufferSize));
+      }
+      current = ByteBuffer.allocateDirect(bufferSize);
+      
+      writer = new Thread(new Runnable()
+      {
+         public void run()
+         {
+            writeAll();
+         }
+      }, "GridRipper file output");
+      writer.setDaemon(true);
+      writer.start();
+   }
+   
+   public void write(final int b) throws IOException
+   {
+      if(!current.hasRemaining())
+      {
+         next();
+      }
+      current.put((byte) b);
+   }
+   
+   public void write(final byte[] b, final int offset, final int length) throws IOException
+   {
+      int off = offset;
+      int len = length;
+      while(len > 0)
+      {
+         if(!current.hasRemaining())
+         {
+            next();
+         }
+         final int n = Math.min(len, current.remaining());
+         current.put(b, off, n);
+         off += n;
+         len -= n;
+      }
+   }
+   
+   /**
+    * hand what has been written so far to the background thread, and wait for
+    * it to be written to the file. This wait is not counted as a write stall:
+    * the file has to be drained at a checkpoint or at the end whatever the
+    * speed of the disk.
+    */
+   public void flush() throws IOException
+   {
+      if(current.position() > 0)
+      {
+         next();
+      }
+      // once every other buffer is free, everything has been written.
+      final ByteBuffer[] all = new ByteBuffer[buffers - 1];
+      for(int i = 0; i < all.length; i++)
+      {
+         all[i] = take(free);
+      }
+      for(final ByteBuffer b : all)
+      {
+         free.add(b);
+      }
+      checkError();
+   }
+   
+   public void close() throws IOException
+   {
+      if(closed)
+      {
+         return;
+      }
+      closed = true;
+      try
+      {
+         flush();
+      }
+      finally
+      {
+         try
+         {
+            full.put(_END);
+            writer.join();
+         }
+         catch(final InterruptedException iex)
+         {
+            Thread.currentThread().interrupt();
+         }
+         channel.close();
+      }
+   }
+   
+   /**
+    * write everything so far to the file (like flush), and then make sure that
+    * the file is on the disk
+    */
+   void sync() throws IOException
+   {
+      flush();
+      channel.force(false);
+   }
+   
+   /**
+    * write everything so far to the file (like flush), and then cut the file
+    * back to length and carry on writing from there
+    */
+   void truncate(final long length) throws IOException
+   {
+      flush();
+      channel.truncate(length);
+      channel.position(length);
+   }
+   
+   private static FileChannel openAt(final File target, final long length) throws IOException
+   {
+      final FileChannel c = new RandomAccessFile(target, "rw").getChannel();
+      try
+      {
+         if(c.size() < length)
+         {
+            throw new IOException(target + " is shorter than expected (" + c.size() + " bytes, not " + length + ")");
+         }
+         c.truncate(length);
+         c.position(length);
+      }
+      catch(final IOException iox)
+      {
+         c.close();
+         throw iox;
+      }
+      return c;
+   }
+   
+   /**
+    * hand the current buffer to the background thread, and go on with the next
+    * free one
+    */
+   private void next() throws IOException
+   {
+      checkError();
+      current.flip();
+      try
+      {
+         full.put(current);
+      }
+      catch(final InterruptedException iex)
+      {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("Interrupted while writing the file");
+      }
+      current = free.poll();
+      if(current == null)
+      {
+         final long start = System.nanoTime();
+         current = take(free);
+         GridRipperMetrics.get().writeStalled(System.nanoTime() - start);
+      }
+   }
+   
+   private static ByteBuffer take(final ArrayBlockingQueue<ByteBuffer> queue) throws IOException
+   {
+      try
+      {
+         return queue.take();
+      }
+      catch(final InterruptedException iex)
+      {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("Interrupted while waiting for the file to be written");
+      }
+   }
+   
+   private void checkError() throws IOException
+   {
+      if(error != null)
+      {
+         throw new IOException("The file could not be written", error);
+      }
+   }
+   
+   /**
+    * the background thread's loop. After an error, the buffers are still
+    * handed back (without being written), so that writing does not wait
+    * forever.
+    */
+   private void writeAll()
+   {
+      while(true)
+      {
+         final ByteBuffer b;
+         try
+         {
+            b = full.take();
+         }
+         catch(final InterruptedException iex)
+         {
+            error = new InterruptedIOException("Interrupted while writing the file");
+            continue;
+         }
+         if(b == _END)
+         {
+            return;
+         }
+         if(error == null)
+         {
+            try
+            {
+               final int length = b.remaining();
+               while(b.hasRemaining())
+               {
+                  channel.write(b);
+               }
+               GridRipperMetrics.get().bytesWritten(length);
+            }
+            catch(final IOException iox)
+            {
+               error = iox;
+            }
+         }
+         b.clear();
+         free.add(b);
+      }
+   }
+   
+   private final FileChannel channel;
+   private final int buffers;
+   private final Thread writer;
+   
+   /**
+    * the buffer being filled
+    */
+   private ByteBuffer current;
+   
+   /**
+    * the buffers that are ready to be filled, and those waiting to be written
+    */
+   private final ArrayBlockingQueue<ByteBuffer> free;
+   private final ArrayBlockingQueue<ByteBuffer> full;
+   
+   private volatile IOException error = null;
+   private boolean closed = false;
+   
+   /**
+    * put on the queue to stop the background thread
+    */
+   private static final ByteBuffer _END = ByteBuffer.allocate(0);
+   
+   private static final int _DEFAULT_BUFFERS = 3;
+   private static final int _DEFAULT_BUFFER_SIZE = 1024 * 1024;
+}
@@ -0,0 +1,75 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * a PDF that is already in memory, such as one that was downloaded or read from
+ * a pipe. It is given a logical name by whoever created it.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+class GridRipperBytesSource implements GridRipperSource
+{
+   /**
+    * @param parent
+    *           the logical name of the directory that the PDF is in (the
+    *           file_path column), which may be empty
+    * @param name
+    *           the name of the PDF (the file_name column)
+    * @param bytes
+    *           the PDF (which is not copied, so it must not be changed)
+    */
+   GridRipperBytesSource(final String parent, final String name, final byte[] bytes)
+   {
+      this.parent = parent;
+      this.name = name;
+      this.bytes = bytes;
+   }
+   
+   public String getPath()
+   {
+      return parent.isEmpty() ? name : parent + "/" + name;
+   }
+   
+   public String getParent()
+   {
+      return parent;
+   }
+   
+   public String getName()
+   {
+      return name;
+   }
+   
+   public PDDocument load(final MemoryUsageSetting memory) throws IOException
+   {
+      return PDDocument.load(bytes, "", null, null, memory);
+   }
+   
+   public InputStream openStream()
+   {
+      return new ByteArrayInputStream(bytes);
+   }
+   
+   private final String parent;
+   private final String name;
+   private final byte[] bytes;
+}
@@ -0,0 +1,577 @@
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+/**
+ * reads a .grc file written by GridRipperColumnarWriter. The file is memory
+ * mapped, and only the footer is read when the file is opened; a column of a
+ * page is decoded only when it is asked for, so a program that filters by
+ * page (using the footer) and then by y_start reads only the y_start column of
+ * the pages that it wants.
+ * 
+ * Pages are numbered from 0, in the order that they were written, and rows
+ * from 0 within each page. Columns are identified by the _COLUMN_ constants of
+ * GridRipperPageWriter (or by name, with getColumnId). The columns that are
+ * the same for every row of a page can be read with readInts like any other
+ * int column.
+ * 
+ * A reader can be used by several threads at once.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+public class GridRipperColumnarReader implements Closeable
+{
+   public GridRipperColumnarReader(final File source) throws IOException
+   {
+      file = new RandomAccessFile(source, "r");
+      try
+      {
+         final FileChannel channel = file.getChannel();
+         final long size = channel.size();
+         if(size < _HEADER_SIZE + _TRAILER_SIZE)
+         {
+            throw new IOException("Not a GridRipper columnar file: " + source);
+         }
+         final ByteBuffer header = read(channel, 0, _HEADER_SIZE);
+         final ByteBuffer trailer = read(channel, size - _TRAILER_SIZE, _TRAILER_SIZE);
+         final long footerStart = trailer.getLong();
+         if(!isMagic(header) || !isMagic(trailer) || footerStart < _HEADER_SIZE
+               || footerStart > size - _TRAILER_SIZE)
+         {
+            throw new IOException("Not a GridRipper columnar file: " + source);
+         }
+         if(header.getInt() != GridRipperColumnarWriter._VERSION)
+         {
+            throw new IOException("Unsupported version of GridRipper columnar file: " + source);
+         }
+         
+         final ByteBuffer footerBytes = read(channel, footerStart, (int) (size - _TRAILER_SIZE - footerStart));
+         final DataInputStream footer = new DataInputStream(
+               new ByteArrayInputStream(footerBytes.array(), 0, footerBytes.limit()));
+         
+         columns = new int[footer.readInt()];
+         columnNames = new String[columns.length];
+         int storedCount = 0;
+         for(int i = 0; i < columns.length; i++)
+         {
+            columns[i] = footer.readInt();
+            columnNames[i] = footer.readUTF();
+            if(GridRipperColumnarWriter.isStored(columns[i]))
+            {
+               storedCount++;
+            }
+         }
+         segmentOfColumn = new int[_COLUMN_COUNT];
+         for(int i = 0; i < _COLUMN_COUNT; i++)
+         {
+            segmentOfColumn[i] = -1;
+         }
+         int k = 0;
+         for(final int column : columns)
+         {
+            if(GridRipperColumnarWriter.isStored(column))
+            {
+               segmentOfColumn[column] = k++;
+            }
+         }
+         
+         runDate = footer.readLong();
+         filePaths = new String[footer.readInt()];
+         fileNames = new String[filePaths.length];
+         for(int i = 0; i < filePaths.length; i++)
+         {
+            filePaths[i] = footer.readUTF();
+            fileNames[i] = footer.readUTF();
+         }
+         
+         final int chunkCount = footer.readInt();
+         chunkOffsets = new long[chunkCount];
+         rowCounts = new int[chunkCount];
+         fileNumbers = new int[chunkCount];
+         pdfPages = new int[chunkCount];
+         totalPages = new int[chunkCount];
+         firstRowIds = new long[chunkCount];
+         segmentStarts = new int[chunkCount * (storedCount + 1)];
+         segmentsPerChunk = storedCount + 1;
+         for(int p = 0; p < chunkCount; p++)
+         {
+            chunkOffsets[p] = footer.readLong();
+            rowCounts[p] = footer.readInt();
+            fileNumbers[p] = footer.readInt();
+            pdfPages[p] = footer.readInt();
+            totalPages[p] = footer.readInt();
+            firstRowIds[p] = footer.readLong();
+            int start = 0;
+            for(int s = 0; s < storedCount; s++)
+            {
+               segmentStarts[p * segmentsPerChunk + s] = start;
+               start += footer.readInt();
+            }
+            segmentStarts[p * segmentsPerChunk + storedCount] = start;
+            totalRows += rowCounts[p];
+         }
+         
+         // a mapping can be at most 2 GB, so the chunks are mapped in as few
+         // regions of up to 2 GB as they fit in.
+         final ArrayList<MappedByteBuffer> mapped = new ArrayList<MappedByteBuffer>();
+         chunkRegions = new int[chunkCount];
+         chunkRegionOffsets = new int[chunkCount];
+         int p = 0;
+         while(p < chunkCount)
+         {
+            final long regionStart = chunkOffsets[p];
+            int last = p;
+            while(last + 1 < chunkCount && chunkEnd(last + 1, footerStart) - regionStart <= Integer.MAX_VALUE)
+            {
+               last++;
+            }
+            final long regionEnd = chunkEnd(last, footerStart);
+            if(regionEnd - regionStart > Integer.MAX_VALUE)
+            {
+               throw new IOException("Page " + p + " is too large to map: " + source);
+            }
+            for(int q = p; q <= last; q++)
+            {
+               chunkRegions[q] = mapped.size();
+               chunkRegionOffsets[q] = (int) (chunkOffsets[q] - regionStart);
+            }
+            mapped.add(channel.map(FileChannel.MapMode.READ_ONLY, regionStart, regionEnd - regionStart));
+            p = last + 1;
+         }
+         regions = mapped.toArray(new MappedByteBuffer[mapped.size()]);
+      }
+      catch(final IOException iox)
+      {
+         file.close();
+         throw iox;
+      }
+   }
+   
+   private long chunkEnd(final int p, final long footerStart)
+   {
+      return p + 1 < chunkOffsets.length ? chunkOffsets[p + 1] : footerStart;
+   }
+   
+   private static ByteBuffer read(final FileChannel channel, final long position, final int length)
+         throws IOException
+   {
+      final ByteBuffer b = ByteBuffer.allocate(length);
+      while(b.hasRemaining())
+      {
+         if(channel.read(b, position + b.position()) < 0)
+         {
+            throw new IOException("Unexpected end of file");
+         }
+      }
+      b.flip();
+      return b;
+   }
+   
+   private static boolean isMagic(final ByteBuffer b)
+   {
+      for(final byte m : GridRipperColumnarWriter._MAGIC)
+      {
+         if(b.get() != m)
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+   
+   /**
+    * @return the ids of the columns in the file, in the order they were written
+    */
+   public int[] getColumns()
+   {
+      return columns.clone();
+   }
+   
+   /**
+    * @return the names of the columns in the file, in the order they were
+    *         written
+    */
+   public String[] getColumnNames()
+   {
+      return columnNames.clone();
+   }
+   
+   /**
+    * @return the id of the column with that name, or -1 if the file does not
+    *         have that column
+    */
+   public int getColumnId(final String name)
+   {
+      for(int i = 0; i < columnNames.length; i++)
+      {
+         if(columnNames[i].equals(name))
+         {
+            return columns[i];
+         }
+      }
+      return -1;
+   }
+   
+   public boolean hasColumn(final int column)
+   {
+      for(final int c : columns)
+      {
+         if(c == column)
+         {
+            return true;
+         }
+      }
+      return false;
+   }
+   
+   /**
+    * @return when the file was written, in milliseconds since 1970
+    */
+   public long getRunDate()
+   {
+      return runDate;
+   }
+   
+   public int getFileCount()
+   {
+      return filePaths.length;
+   }
+   
+   /**
+    * @param fileNumber
+    *           the number of the PDF, from 1
+    */
+   public String getFilePath(final int fileNumber)
+   {
+      return filePaths[fileNumber - 1];
+   }
+   
+   /**
+    * @param fileNumber
+    *           the number of the PDF, from 1
+    */
+   public String getFileName(final int fileNumber)
+   {
+      return fileNames[fileNumber - 1];
+   }
+   
+   public int getPageCount()
+   {
+      return chunkOffsets.length;
+   }
+   
+   public long getRowCount()
+   {
+      return totalRows;
+   }
+   
+   public int getRowCount(final int page)
+   {
+      return rowCounts[page];
+   }
+   
+   public int getFileNumber(final int page)
+   {
+      return fileNumbers[page];
+   }
+   
+   public int getPdfPage(final int page)
+   {
+      return pdfPages[page];
+   }
+   
+   public int getTotalPage(final int page)
+   {
+      return totalPages[page];
+   }
+   
+   public long getFirstRowId(final int page)
+   {
+      return firstRowIds[page];
+   }
+   
+   /**
+    * decode a float column (y_start, y_smooth, x_start, x_end or font_size) of
+    * a page
+    * 
+    * @param into
+    *           an array to decode into, or null; a new array is returned if
+    *           it is too small
+    * @return the value of each row of the page
+    */
+   public float[] readFloats(final int page, final int column, final float[] into)
+   {
+      if(column == GridRipperPageWriter._COLUMN_ROTATION || column == GridRipperPageWriter._COLUMN_CONTENT
+            || !GridRipperColumnarWriter.isStored(column))
+      {
+         throw new IllegalArgumentException("Not a float column: " + column);
+      }
+      final int rows = rowCounts[page];
+      final float[] values = into != null && into.length >= rows ? into : new float[rows];
+      final ByteBuffer b = regions[chunkRegions[page]];
+      final int[] position = { segmentStart(page, column) };
+      int previous = 0;
+      for(int j = 0; j < rows; j++)
+      {
+         previous += unzigzag(readVarint(b, position));
+         values[j] = Float.intBitsToFloat(previous);
+      }
+      return values;
+   }
+   
+   /**
+    * decode an int column (row_id, file_number, pdf_page, total_page or
+    * rotation) of a page
+    * 
+    * @param into
+    *           an array to decode into, or null; a new array is returned if
+    *           it is too small
+    * @return the value of each row of the page
+    */
+   public int[] readInts(final int page, final int column, final int[] into)
+   {
+      final int rows = rowCounts[page];
+      final int[] values = into != null && into.length >= rows ? into : new int[rows];
+      if(column == GridRipperPageWriter._COLUMN_ROTATION)
+      {
+         final ByteBuffer b = regions[chunkRegions[page]];
+         final int[] position = { segmentStart(page, column) };
+         int previous = 0;
+         for(int j = 0; j < rows; j++)
+         {
+            previous += unzigzag(readVarint(b, position));
+            values[j] = previous;
+         }
+         return values;
+      }
+      
+      final int value;
+      if(column == GridRipperPageWriter._COLUMN_FILE_NUMBER)
+      {
+         value = fileNumbers[page];
+      }
+      else if(column == GridRipperPageWriter._COLUMN_PDF_PAGE)
+      {
+         value = pdfPages[page];
+      }
+      else if(column == GridRipperPageWriter._COLUMN_TOTAL_PAGE)
+      {
+         value = totalPages[page];
+      }
+      else if(column == GridRipperPageWriter._COLUMN_ROW_ID)
+      {
+         for(int j = 0; j < rows; j++)
+         {
+            values[j] = (int) firstRowIds[page] + j;
+         }
+         return values;
+      }
+      else
+      {
+         throw new IllegalArgumentException("Not an int column: " + column);
+      }
+      for(int j = 0; j < rows; j++)
+      {
+         values[j] = value;
+      }
+      return values;
+   }
+   
+   /**
+    * decode the content of a page. Rows with the same content share the same
+    * String.
+    * 
+    * @return the content of each row of the page
+    */
+   public String[] readContent(final int page)
+   {
+      final String[] dictionary = readDictionary(page);
+      final int[] codes = readContentCodes(page, null);
+      final String[] content = new String[codes.length];
+      for(int j = 0; j < codes.length; j++)
+      {
+         content[j] = dictionary[codes[j]];
+      }
+      return content;
+   }
+   
+   /**
+    * @return the distinct content of a page, in the order that it first
+    *         appears on the page
+    */
+   public String[] readDictionary(final int page)
+   {
+      final ByteBuffer b = regions[chunkRegions[page]];
+      final int[] position = { segmentStart(page, GridRipperPageWriter._COLUMN_CONTENT) };
+      final int[] lengths = new int[readVarint(b, position)];
+      for(int e = 0; e < lengths.length; e++)
+      {
+         lengths[e] = readVarint(b, position);
+      }
+      final String[] dictionary = new String[lengths.length];
+      byte[] bytes = new byte[64];
+      for(int e = 0; e < lengths.length; e++)
+      {
+         if(bytes.length < lengths[e])
+         {
+            bytes = new byte[Math.max(lengths[e], bytes.length * 2)];
+         }
+         for(int i = 0; i < lengths[e]; i++)
+         {
+            bytes[i] = b.get(position[0] + i);
+         }
+         position[0] += lengths[e];
+         dictionary[e] = new String(bytes, 0, lengths[e], _UTF8);
+      }
+      return dictionary;
+   }
+   
+   /**
+    * decode the number of each row's entry in the page's dictionary (see
+    * readDictionary), without decoding the text
+    * 
+    * @param into
+    *           an array to decode into, or null; a new array is returned if
+    *           it is too small
+    */
+   public int[] readContentCodes(final int page, final int[] into)
+   {
+      final ByteBuffer b = regions[chunkRegions[page]];
+      final int[] position = { segmentStart(page, GridRipperPageWriter._COLUMN_CONTENT) };
+      final int entries = readVarint(b, position);
+      int bytes = 0;
+      for(int e = 0; e < entries; e++)
+      {
+         bytes += readVarint(b, position);
+      }
+      position[0] += bytes;
+      final int rows = rowCounts[page];
+      final int[] codes = into != null && into.length >= rows ? into : new int[rows];
+      for(int j = 0; j < rows; j++)
+      {
+         codes[j] = readVarint(b, position);
+      }
+      return codes;
+   }
+   
+   /**
+    * find the rows of a page whose value in a float column is between min and
+    * max (inclusive)
+    * 
+    * @param rows
+    *           where to put the numbers of the rows that match; it must be as
+    *           long as the page's row count
+    * @return how many rows match
+    */
+   public int filter(final int page, final int column, final float min, final float max, final int[] rows)
+   {
+      final float[] values = readFloats(page, column, scratch.get());
+      scratch.set(values);
+      int n = 0;
+      for(int j = 0; j < rowCounts[page]; j++)
+      {
+         if(values[j] >= min && values[j] <= max)
+         {
+            rows[n++] = j;
+         }
+      }
+      return n;
+   }
+   
+   /**
+    * @return the position (in the page's region) of the start of a stored
+    *         column
+    */
+   private int segmentStart(final int page, final int column)
+   {
+      final int segment = column >= 0 && column < _COLUMN_COUNT ? segmentOfColumn[column] : -1;
+      if(segment == -1)
+      {
+         throw new IllegalArgumentException("The file does not have column " + column);
+      }
+      return chunkRegionOffsets[page] + segmentStarts[page * segmentsPerChunk + segment];
+   }
+   
+   private static int readVarint(final ByteBuffer b, final int[] position)
+   {
+      int p = position[0];
+      int v = 0;
+      int shift = 0;
+      byte x;
+      do
+      {
+         x = b.get(p++);
+         v |= (x & 0x7F) << shift;
+         shift += 7;
+      }
+      while(x < 0);
+      position[0] = p;
+      return v;
+   }
+   
+   private static int unzigzag(final int u)
+   {
+      return (u >>> 1) ^ -(u & 1);
+   }
+   
+   /**
+    * close the file. The mapped regions are released by the garbage collector.
+    */
+   public void close() throws IOException
+   {
+      file.close();
+   }
+   
+   private final RandomAccessFile file;
+   private final MappedByteBuffer[] regions;
+   
+   private final int[] columns;
+   private final String[] columnNames;
+   private final int[] segmentOfColumn;
+   
+   private final long runDate;
+   private final String[] filePaths;
+   private final String[] fileNames;
+   
+   private final long[] chunkOffsets;
+   private final int[] rowCounts;
+   private final int[] fileNumbers;
+   private final int[] pdfPages;
+   private final int[] totalPages;
+   private final long[] firstRowIds;
+   private final int[] chunkRegions;
+   private final int[] chunkRegionOffsets;
+   private final int[] segmentStarts;
+   private final int segmentsPerChunk;
+   private long totalRows = 0;
+   
+   private final ThreadLocal<float[]> scratch = new ThreadLocal<float[]>();
+   
+   private static final int _HEADER_SIZE = 8;
+   private static final int _TRAILER_SIZE = 12;
+   private static final int _COLUMN_COUNT = GridRipperPageWriter._COLUMN_CONTENT + 1;
+   private static final Charset _UTF8 = Charset.forName("UTF-8");
+}
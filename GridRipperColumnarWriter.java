@@ -0,0 +1,490 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * This class outputs the information to a compact binary file (.grc) that is
+ * laid out by column, for programs that read GridRipper's output (see
+ * GridRipperColumnarReader) rather than for people.
+ * 
+ * Each page is written as a chunk, and in a chunk each column is stored
+ * separately, so a program can read one column of a page (e.g. y_start)
+ * without decoding the others. Floats are stored as the difference between
+ * their bits and the bits of the float above them, which is small for the
+ * sorted y coordinates, and ints as the difference from the int above them;
+ * both are written as variable-length ints. The content is stored as a
+ * dictionary of the distinct text on the page, followed by an index into the
+ * dictionary for each row. The columns that are the same for every row of a
+ * page (row_id, file_number, file_path, file_name, pdf_page and total_page) are
+ * not stored in the chunk at all.
+ * 
+ * The file ends with a footer that lists the columns, the PDFs and, for each
+ * chunk, where it is, its page and the length of each of its columns. The
+ * layout of the file is:
+ * 
+ * <pre>
+ * "GRCF" version
+ * chunk...
+ * footer:
+ *    columnCount (id name)...
+ *    runDate
+ *    fileCount (path name)...
+ *    chunkCount (offset rows fileNumber pdfPage totalPage firstRowId length...)...
+ * footerOffset "GRCF"
+ * </pre>
+ * 
+ * The footer is written with a DataOutputStream (big-endian, with Strings in
+ * modified UTF-8).
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+class GridRipperColumnarWriter implements GridRipperPageWriter
+{
+   GridRipperColumnarWriter(final File target)
+   {
+      this.target = target;
+   }
+   
+   public void open(final GridRipperController c)
+   {
+      runStatus = GridRipperWriter._RUN_STATUS_RUNNING;
+      controller = c;
+      columns = c.getColumns();
+      
+      int n = 0;
+      for(final int column : columns)
+      {
+         if(isStored(column))
+         {
+            n++;
+         }
+      }
+      stored = new int[n];
+      n = 0;
+      for(final int column : columns)
+      {
+         if(isStored(column))
+         {
+            stored[n++] = column;
+         }
+      }
+      lengths = new int[stored.length];
+      
+      try
+      {
+         out = new GridRipperOutputBuffer(new GridRipperAsyncFileOutput(target));
+         out.write(_MAGIC);
+         writeFixedInt(_VERSION);
+      }
+      catch(final IOException iox)
+      {
+         iox.printStackTrace();
+         errorStatus = GridRipperWriter._ERROR_STATUS_CRASH;
+      }
+   }
+   
+   /**
+    * @return true if the column is stored in each chunk, false if it is the
+    *         same for every row of a page (and so is kept in the footer)
+    */
+   static boolean isStored(final int column)
+   {
+      return column >= _COLUMN_Y_START;
+   }
+   
+   public void writePage(final GridRipperPage page, final int[] columns, final GridRipperController c,
+         final int firstId)
+   {
+      if(errorStatus == GridRipperWriter._ERROR_STATUS_CRASH)
+      {
+         return;
+      }
+      try
+      {
+         final long chunkStart = out.getBytesWritten();
+         for(int k = 0; k < stored.length; k++)
+         {
+            final long start = out.getBytesWritten();
+            final int column = stored[k];
+            if(column == _COLUMN_CONTENT)
+            {
+               writeContent(page);
+            }
+            else if(column == _COLUMN_ROTATION)
+            {
+               int previous = 0;
+               for(int j = 0; j < page.size(); j++)
+               {
+                  final int v = page.getRotation(page.getRow(j));
+                  writeVarint(zigzag(v - previous));
+                  previous = v;
+               }
+            }
+            else
+            {
+               int previous = 0;
+               for(int j = 0; j < page.size(); j++)
+               {
+                  final int v = Float.floatToRawIntBits(getFloat(page, column, page.getRow(j)));
+                  writeVarint(zigzag(v - previous));
+                  previous = v;
+               }
+            }
+            lengths[k] = (int) (out.getBytesWritten() - start);
+         }
+         
+         chunks.writeLong(chunkStart);
+         chunks.writeInt(page.size());
+         chunks.writeInt(c.getFileNumber());
+         chunks.writeInt(c.getPdfPage() + 1);
+         chunks.writeInt(c.getPid() + 1);
+         chunks.writeLong(firstId);
+         for(final int length : lengths)
+         {
+            chunks.writeInt(length);
+         }
+         chunkCount++;
+      }
+      catch(final IOException iox)
+      {
+         iox.printStackTrace();
+         errorStatus = GridRipperWriter._ERROR_STATUS_CRASH;
+      }
+   }
+   
+   private static float getFloat(final GridRipperPage page, final int column, final int r)
+   {
+      if(column == _COLUMN_Y_START)
+      {
+         return page.getYStart(r);
+      }
+      else if(column == _COLUMN_Y_SMOOTH)
+      {
+         return page.getYSmooth(r);
+      }
+      else if(column == _COLUMN_X_START)
+      {
+         return page.getXStart(r);
+      }
+      else if(column == _COLUMN_X_END)
+      {
+         return page.getXEnd(r);
+      }
+      else
+      {
+         return page.getFontSize(r);
+      }
+   }
+   
+   /**
+    * write the content column of the page: the number of distinct entries, the
+    * length (in bytes of UTF-8) of each, the entries, and then for each row the
+    * number of its entry
+    */
+   private void writeContent(final GridRipperPage page) throws IOException
+   {
+      final char[] chars = page.getChars();
+      final int rows = page.size();
+      
+      int size = 16;
+      while(size < rows * 2)
+      {
+         size <<= 1;
+      }
+      if(table.length < size)
+      {
+         table = new int[size];
+         entries = new int[size];
+      }
+      if(codes.length < rows)
+      {
+         codes = new int[Math.max(rows, codes.length * 2)];
+      }
+      for(int i = 0; i < size; i++)
+      {
+         table[i] = -1;
+      }
+      
+      // the entries are numbered in the order that they first appear, and
+      // table (a hash table of entry numbers) finds the entry for a row.
+      int entryCount = 0;
+      for(int j = 0; j < rows; j++)
+      {
+         final int r = page.getRow(j);
+         final int start = page.getContentStart(r);
+         final int length = page.getContentLength(r);
+         int hash = 0;
+         for(int i = start; i < start + length; i++)
+         {
+            hash = 31 * hash + chars[i];
+         }
+         int slot = (hash ^ (hash >>> 16)) & (size - 1);
+         while(true)
+         {
+            final int e = table[slot];
+            if(e == -1)
+            {
+               table[slot] = entryCount;
+               entries[entryCount] = r;
+               codes[j] = entryCount++;
+               break;
+            }
+            if(sameContent(page, chars, entries[e], start, length))
+            {
+               codes[j] = e;
+               break;
+            }
+            slot = (slot + 1) & (size - 1);
+         }
+      }
+      
+      writeVarint(entryCount);
+      for(int e = 0; e < entryCount; e++)
+      {
+         writeVarint(GridRipperOutputBuffer.utf8Length(chars, page.getContentStart(entries[e]),
+               page.getContentLength(entries[e])));
+      }
+      for(int e = 0; e < entryCount; e++)
+      {
+         out.writeText(chars, page.getContentStart(entries[e]), page.getContentLength(entries[e]));
+      }
+      for(int j = 0; j < rows; j++)
+      {
+         writeVarint(codes[j]);
+      }
+   }
+   
+   private static boolean sameContent(final GridRipperPage page, final char[] chars, final int r, final int start,
+         final int length)
+   {
+      if(page.getContentLength(r) != length)
+      {
+         return false;
+      }
+      final int other = page.getContentStart(r);
+      for(int i = 0; i < length; i++)
+      {
+         if(chars[other + i] != chars[start + i])
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+   
+   /**
+    * @return the int, with its sign moved to the lowest bit, so that ints near
+    *         zero (positive or negative) have few significant bits
+    */
+   static int zigzag(final int v)
+   {
+      return (v << 1) ^ (v >> 31);
+   }
+   
+   /**
+    * write the int 7 bits at a time, lowest bits first, with the highest bit of
+    * each byte set if more bytes follow
+    */
+   private void writeVarint(final int v) throws IOException
+   {
+      int u = v;
+      while((u & ~0x7F) != 0)
+      {
+         out.write((u & 0x7F) | 0x80);
+         u >>>= 7;
+      }
+      out.write(u);
+   }
+   
+   private void writeFixedInt(final int v) throws IOException
+   {
+      out.write(v >>> 24);
+      out.write(v >>> 16);
+      out.write(v >>> 8);
+      out.write(v);
+   }
+   
+   public void writeBlank()
+   {
+      // the heading of the spreadsheet formats is not written.
+   }
+   
+   public void writeText(final String s)
+   {
+      // the heading of the spreadsheet formats is not written.
+   }
+   
+   public void writeInt(final int i)
+   {
+      // only whole pages are written (see writePage).
+   }
+   
+   public void writeFloat(final float f)
+   {
+      // only whole pages are written (see writePage).
+   }
+   
+   /**
+    * the only date is the run date, which is kept for the footer
+    */
+   public void writeDate(final long d)
+   {
+      runDate = d;
+   }
+   
+   public void startRow()
+   {
+      // no action is required.
+   }
+   
+   public void endRow()
+   {
+      // no action is required.
+   }
+   
+   public void startPage()
+   {
+      // no action is required.
+   }
+   
+   public void endPage()
+   {
+      // no action is required.
+   }
+   
+   public void startPDF()
+   {
+      // no action is required.
+   }
+   
+   public void endPDF()
+   {
+      // no action is required.
+   }
+   
+   /**
+    * write the footer and close the file
+    */
+   public void close()
+   {
+      if(out == null)
+      {
+         runStatus = GridRipperWriter._RUN_STATUS_DONE;
+         return;
+      }
+      try
+      {
+         if(errorStatus != GridRipperWriter._ERROR_STATUS_CRASH)
+         {
+            final long footerStart = out.getBytesWritten();
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream footer = new DataOutputStream(bytes);
+            footer.writeInt(columns.length);
+            for(final int column : columns)
+            {
+               footer.writeInt(column);
+               footer.writeUTF(controller.getColumnName(column));
+            }
+            footer.writeLong(runDate);
+            footer.writeInt(controller.getFileCount());
+            for(int i = 0; i < controller.getFileCount(); i++)
+            {
+               final String path = controller.getFilePath(i);
+               footer.writeUTF(path == null ? "" : path);
+               footer.writeUTF(controller.getFileName(i));
+            }
+            footer.writeInt(chunkCount);
+            footer.flush();
+            out.write(bytes.toByteArray());
+            out.write(chunkBytes.toByteArray());
+            for(int shift = 56; shift >= 0; shift -= 8)
+            {
+               out.write((int) (footerStart >>> shift));
+            }
+            out.write(_MAGIC);
+         }
+         out.close();
+      }
+      catch(final IOException iox)
+      {
+         iox.printStackTrace();
+         errorStatus = GridRipperWriter._ERROR_STATUS_CRASH;
+      }
+      runStatus = GridRipperWriter._RUN_STATUS_DONE;
+   }
+   
+   public int getRunStatus()
+   {
+      return runStatus;
+   }
+   
+   public int getErrorStatus()
+   {
+      return errorStatus;
+   }
+   
+   public void declareError()
+   {
+      if(errorStatus == GridRipperWriter._ERROR_STATUS_NO_ERROR)
+      {
+         errorStatus = GridRipperWriter._ERROR_STATUS_ERROR;
+      }
+   }
+   
+   public void declareFatalError()
+   {
+      errorStatus = GridRipperWriter._ERROR_STATUS_CRASH;
+   }
+   
+   private final File target;
+   /**
+    * the output, which is written to the file on a background thread
+    */
+   private GridRipperOutputBuffer out = null;
+   private GridRipperController controller = null;
+   private int runStatus = GridRipperWriter._RUN_STATUS_NOT_STARTED;
+   private int errorStatus = GridRipperWriter._ERROR_STATUS_NO_ERROR;
+   
+   /**
+    * the columns that are written, and those that are stored in each chunk
+    */
+   private int[] columns = null;
+   private int[] stored = null;
+   private int[] lengths = null;
+   
+   private long runDate = 0;
+   
+   /**
+    * the footer's record of each chunk
+    */
+   private final ByteArrayOutputStream chunkBytes = new ByteArrayOutputStream();
+   private final DataOutputStream chunks = new DataOutputStream(chunkBytes);
+   private int chunkCount = 0;
+   
+   /**
+    * reused for the dictionary of each page: a hash table of entry numbers,
+    * the row of each entry, and the entry of each row
+    */
+   private int[] table = new int[0];
+   private int[] entries = new int[0];
+   private int[] codes = new int[0];
+   
+   static final byte[] _MAGIC = { 'G', 'R', 'C', 'F' };
+   static final int _VERSION = 1;
+}
@@ -0,0 +1,574 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.ZipFile;
+
+import org.apache.pdfbox.io.IOUtils;
+
+/**
+ * runs GridRipper without the Graphical User Interface, so that it can be used
+ * from scripts and on servers that have no display. Nothing in this class
+ * touches Swing/AWT.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+public class GridRipperCommandLine
+{
+   /**
+    * 
+    * @param args
+    *           the options and the PDFs (or directories of PDFs) to rip; run
+    *           with --help for the list of options
+    */
+   public static void main(String[] args)
+   {
+      System.setProperty("java.awt.headless", "true");
+      System.exit(run(args, System.err));
+   }
+   
+   /**
+    * 
+    * @param args
+    *           the command-line arguments
+    * @param messages
+    *           where usage and status messages are printed
+    * @return the exit code: _EXIT_OK, _EXIT_ERRORS, _EXIT_FATAL or _EXIT_USAGE
+    */
+   public static int run(final String[] args, final PrintStream messages)
+   {
+      File target = null;
+      String format = null;
+      int mode = GridRipperGUI._MODE_PHRASES;
+      String[] columns = null;
+      int threads = Runtime.getRuntime().availableProcessors();
+      boolean threadsGiven = false;
+      int pagesPerTask = 0;
+      float lineTolerance = GridRipperController._DEFAULT_LINE_TOLERANCE;
+      boolean lineToleranceRelative = false;
+      boolean orderLinesByX = false;
+      boolean pipelined = false;
+      int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+      boolean overwrite = false;
+      boolean checkpoint = false;
+      boolean resume = false;
+      long memoryBudget = 0;
+      long fileTimeLimit = 0;
+      long pageTimeLimit = 0;
+      boolean reportHeap = false;
+      boolean mapped = false;
+      File cacheDirectory = null;
+      long cacheBytes = GridRipperExtractionCache._DEFAULT_MAX_BYTES;
+      final ArrayList<File> files = new ArrayList<File>();
+      
+      try
+      {
+         for(int i = 0; i < args.length; i++)
+         {
+            final String a = args[i];
+            if(a.equals("-h") || a.equals("--help"))
+            {
+               messages.println(_USAGE);
+               return _EXIT_OK;
+            }
+            else if(a.equals("-o") || a.equals("--output"))
+            {
+               target = new File(args[++i]);
+            }
+            else if(a.equals("-f") || a.equals("--format"))
+            {
+               format = args[++i].toLowerCase();
+               if(!format.equals(_CSV) && !format.equals(_ODS) && !format.equals(_XLSX) && !format.equals(_GRC))
+               {
+                  return usage(messages, "Unknown format: " + format);
+               }
+            }
+            else if(a.equals("-m") || a.equals("--mode"))
+            {
+               final String m = args[++i].toLowerCase();
+               if(m.equals("phrases"))
+               {
+                  mode = GridRipperGUI._MODE_PHRASES;
+               }
+               else if(m.equals("words"))
+               {
+                  mode = GridRipperGUI._MODE_WORDS;
+               }
+               else if(m.equals("characters"))
+               {
+                  mode = GridRipperGUI._MODE_CHARACTERS;
+               }
+               else
+               {
+                  return usage(messages, "Unknown mode: " + m);
+               }
+            }
+            else if(a.equals("-c") || a.equals("--columns"))
+            {
+               columns = args[++i].split(",");
+            }
+            else if(a.equals("-t") || a.equals("--threads"))
+            {
+               threads = Integer.parseInt(args[++i]);
+               threadsGiven = true;
+            }
+            else if(a.equals("-p") || a.equals("--pages-per-task"))
+            {
+               pagesPerTask = Integer.parseInt(args[++i]);
+            }
+            else if(a.equals("-l") || a.equals("--line-tolerance"))
+            {
+               String l = args[++i].toLowerCase();
+               lineToleranceRelative = l.endsWith("em");
+               if(lineToleranceRelative)
+               {
+                  l = l.substring(0, l.length() - 2);
+               }
+               lineTolerance = Float.parseFloat(l);
+            }
+            else if(a.equals("--order-lines-by-x"))
+            {
+               orderLinesByX = true;
+            }
+            else if(a.equals("--pipeline"))
+            {
+               pipelined = true;
+            }
+            else if(a.equals("-z") || a.equals("--compression-level"))
+            {
+               compressionLevel = Integer.parseInt(args[++i]);
+               if(compressionLevel < 0 || compressionLevel > 9)
+               {
+                  return usage(messages, "The compression level must be from 0 to 9.");
+               }
+            }
+            else if(a.equals("--overwrite"))
+            {
+               overwrite = true;
+            }
+            else if(a.equals("--memory-budget"))
+            {
+               memoryBudget = Long.parseLong(args[++i]) * 1024 * 1024;
+               if(memoryBudget <= 0)
+               {
+                  return usage(messages, "The memory budget must be at least 1 MB.");
+               }
+            }
+            else if(a.equals("--file-time-limit"))
+            {
+               fileTimeLimit = Long.parseLong(args[++i]) * 1000;
+               if(fileTimeLimit <= 0)
+               {
+                  return usage(messages, "The time limit must be at least 1 second.");
+               }
+            }
+            else if(a.equals("--page-time-limit"))
+            {
+               pageTimeLimit = Long.parseLong(args[++i]) * 1000;
+               if(pageTimeLimit <= 0)
+               {
+                  return usage(messages, "The time limit must be at least 1 second.");
+               }
+            }
+            else if(a.equals("--mmap"))
+            {
+               mapped = true;
+            }
+            else if(a.equals("--report-heap"))
+            {
+               reportHeap = true;
+            }
+            else if(a.equals("--cache"))
+            {
+               cacheDirectory = new File(args[++i]);
+            }
+            else if(a.equals("--cache-size"))
+            {
+               cacheBytes = Long.parseLong(args[++i]) * 1024 * 1024;
+               if(cacheBytes < 0)
+               {
+                  return usage(messages, "The cache size cannot be negative.");
+               }
+            }
+            else if(a.equals("--checkpoint"))
+            {
+               checkpoint = true;
+            }
+            else if(a.equals("--resume"))
+            {
+               checkpoint = true;
+               resume = true;
+            }
+            else if(a.equals(_STDIN))
+            {
+               final File f = new File(_STDIN);
+               if(!files.contains(f))
+               {
+                  files.add(f);
+               }
+            }
+            else if(a.startsWith("-"))
+            {
+               return usage(messages, "Unknown option: " + a);
+            }
+            else
+            {
+               final File f = new File(a);
+               if(!f.exists())
+               {
+                  return usage(messages, "No such file or directory: " + a);
+               }
+               addFiles(f, files);
+            }
+         }
+      }
+      catch(final ArrayIndexOutOfBoundsException aex)
+      {
+         return usage(messages, "Missing value for the last option.");
+      }
+      catch(final NumberFormatException nex)
+      {
+         return usage(messages, "Not a number: " + nex.getMessage());
+      }
+      
+      if(files.isEmpty())
+      {
+         return usage(messages, "No PDF files selected to rip.");
+      }
+      if(target == null)
+      {
+         return usage(messages, "No output file (-o) selected.");
+      }
+      if(format == null)
+      {
+         final String name = target.getName().toLowerCase();
+         format = _ODS;
+         for(final String f : new String[] { _CSV, _XLSX, _GRC })
+         {
+            if(name.endsWith("." + f))
+            {
+               format = f;
+            }
+         }
+      }
+      if(target.getName().indexOf(".") == -1)
+      {
+         target = new File(target.getParentFile(), target.getName() + "." + format);
+      }
+      if(pipelined)
+      {
+         // the pipeline is for ripping the PDFs one at a time.
+         if(threadsGiven && threads > 1)
+         {
+            return usage(messages, "--pipeline rips one PDF at a time, so it cannot be used with -t above 1.");
+         }
+         threads = 1;
+      }
+      if(checkpoint && !format.equals(_CSV))
+      {
+         return usage(messages, "--checkpoint and --resume can only be used with the csv format.");
+      }
+      if(target.exists() && !overwrite && !resume)
+      {
+         return usage(messages, "Output file exists (use --overwrite to replace it): " + target);
+      }
+      
+      // the sources are made last, since reading a PDF from the standard
+      // input cannot be undone.
+      final ArrayList<GridRipperSource> sources = new ArrayList<GridRipperSource>();
+      final ArrayList<ZipFile> archives = new ArrayList<ZipFile>();
+      try
+      {
+         for(final File f : files)
+         {
+            try
+            {
+               if(f.getPath().equals(_STDIN))
+               {
+                  sources.add(new GridRipperBytesSource("", _STDIN_NAME, IOUtils.toByteArray(System.in)));
+               }
+               else if(f.getName().toLowerCase().endsWith(_ZIP))
+               {
+                  archives.add(GridRipperZipSource.addEntries(f, sources));
+               }
+               else
+               {
+                  sources.add(new GridRipperFileSource(f, mapped));
+               }
+            }
+            catch(final IOException iox)
+            {
+               return usage(messages, "Cannot read " + f + ": " + iox.getMessage());
+            }
+         }
+         if(sources.isEmpty())
+         {
+            return usage(messages, "No PDF files found in the zip archive(s).");
+         }
+         
+         final GridRipperWriter out;
+         if(format.equals(_CSV))
+         {
+            out = new GridRipperCsvWriter(target);
+         }
+         else if(format.equals(_XLSX))
+         {
+            out = new GridRipperXlsxStreamWriter(target, compressionLevel, threads);
+         }
+         else if(format.equals(_GRC))
+         {
+            out = new GridRipperColumnarWriter(target);
+         }
+         else
+         {
+            out = new GridRipperOdsStreamWriter(target, compressionLevel, threads);
+         }
+         final GridRipperSource[] pdfs = sources.toArray(new GridRipperSource[sources.size()]);
+         final GridRipperController c = new GridRipperController(pdfs, out, mode);
+         c.setThreadCount(threads);
+         c.setPagesPerTask(pagesPerTask);
+         c.setLineClustering(lineTolerance, lineToleranceRelative, orderLinesByX);
+         c.setPipelined(pipelined);
+         c.setMemoryBudget(memoryBudget);
+         c.setFileTimeLimit(fileTimeLimit);
+         c.setPageTimeLimit(pageTimeLimit);
+         GridRipperExtractionCache cache = null;
+         if(cacheDirectory != null)
+         {
+            try
+            {
+               cache = new GridRipperExtractionCache(cacheDirectory, cacheBytes);
+            }
+            catch(final IOException iox)
+            {
+               return usage(messages, iox.getMessage());
+            }
+            c.setCache(cache);
+         }
+         if(checkpoint)
+         {
+            c.setCheckpoint(new File(target.getPath() + _CHECKPOINT_EXTENSION), resume);
+         }
+         if(columns != null)
+         {
+            if(format.equals(_ODS))
+            {
+               messages.println("Note: the .ods writer always writes its own set of columns; --columns is ignored.");
+            }
+            for(int i = 0; i < c.permissionsCount; i++)
+            {
+               c.setPermission(i, false);
+            }
+            for(final String column : columns)
+            {
+               final int id = c.getColumnId(column.trim());
+               if(id == -1)
+               {
+                  return usage(messages, "Unknown column: " + column + " (columns are: "
+                        + Arrays.toString(c.getColumnNames()) + ")");
+               }
+               c.setPermission(id, true);
+            }
+         }
+         
+         final long stallBefore = GridRipperMetrics.get().getWriteStallMillis();
+         try
+         {
+            c.run();
+         }
+         catch(final RuntimeException rex)
+         {
+            rex.printStackTrace();
+            out.declareFatalError();
+         }
+         
+         final long stall = GridRipperMetrics.get().getWriteStallMillis() - stallBefore;
+         messages.println("Time spent waiting for the output file to be written: " + stall + " ms.");
+         if(reportHeap)
+         {
+            messages.println("Peak heap use while ripping each PDF:");
+            for(int i = 0; i < sources.size(); i++)
+            {
+               final long peak = c.getPeakHeap(i);
+               final String size = peak < 0 ? "(not ripped)" : (peak / (1024 * 1024)) + " MB";
+               messages.println("   " + size + "  " + sources.get(i).getPath());
+            }
+         }
+         for(int i = 0; i < sources.size(); i++)
+         {
+            if(c.getSkipReason(i) != null)
+            {
+               messages.println("Skipped " + sources.get(i).getPath() + ": " + c.getSkipReason(i));
+            }
+         }
+         if(cache != null)
+         {
+            messages.println("PDFs found in the cache: " + cache.getHits() + "; ripped: " + cache.getMisses() + ".");
+         }
+         final int errorStatus = out.getErrorStatus();
+         if(errorStatus == GridRipperWriter._ERROR_STATUS_NO_ERROR)
+         {
+            messages.println("Ripped " + sources.size() + " PDF(s) to " + target + " with no errors.");
+            return _EXIT_OK;
+         }
+         else if(errorStatus == GridRipperWriter._ERROR_STATUS_ERROR)
+         {
+            messages.println("Ripped " + sources.size() + " PDF(s) to " + target
+                  + " but there were errors. The output may be incomplete.");
+            return _EXIT_ERRORS;
+         }
+         else
+         {
+            messages.println("GridRipper could not complete the requested action because of a fatal error.");
+            return _EXIT_FATAL;
+         }
+      }
+      finally
+      {
+         for(final ZipFile zip : archives)
+         {
+            try
+            {
+               zip.close();
+            }
+            catch(final IOException iox)
+            {
+               iox.printStackTrace();
+            }
+         }
+      }
+   }
+   
+   /**
+    * adds a PDF, or (for a directory) every PDF in the directory and its
+    * subdirectories, in alphabetical order.
+    */
+   private static void addFiles(final File f, final ArrayList<File> files)
+   {
+      if(f.isDirectory())
+      {
+         final File[] ff = f.listFiles();
+         if(ff == null)
+         {
+            return;
+         }
+         Arrays.sort(ff);
+         for(final File sub : ff)
+         {
+            if(sub.isDirectory() || sub.getName().toLowerCase().endsWith(".pdf"))
+            {
+               addFiles(sub, files);
+            }
+         }
+      }
+      else if(!files.contains(f))
+      {
+         files.add(f);
+      }
+   }
+   
+   private static int usage(final PrintStream messages, final String problem)
+   {
+      messages.println(problem);
+      messages.println(_USAGE);
+      return _EXIT_USAGE;
+   }
+   
+   /**
+    * the run finished with no errors.
+    */
+   public static final int _EXIT_OK = 0;
+   
+   /**
+    * the run finished, but there were errors, so the output may be incomplete.
+    */
+   public static final int _EXIT_ERRORS = 1;
+   
+   /**
+    * the run was aborted because of a fatal error.
+    */
+   public static final int _EXIT_FATAL = 2;
+   
+   /**
+    * the arguments could not be understood; nothing was ripped.
+    */
+   public static final int _EXIT_USAGE = 64;
+   
+   private static final String _CSV = "csv";
+   private static final String _ODS = "ods";
+   private static final String _XLSX = "xlsx";
+   /**
+    * the columnar binary format (see GridRipperColumnarWriter)
+    */
+   private static final String _GRC = "grc";
+   
+   /**
+    * in place of a PDF, reads a PDF from the standard input, which is given
+    * the name _STDIN_NAME
+    */
+   private static final String _STDIN = "-";
+   private static final String _STDIN_NAME = "stdin";
+   
+   /**
+    * a file with this extension is read as a zip archive of PDFs
+    */
+   private static final String _ZIP = ".zip";
+   
+   /**
+    * added to the name of the output file to name the checkpoint journal
+    */
+   private static final String _CHECKPOINT_EXTENSION = ".checkpoint";
+   
+   private static final String _USAGE = "Usage: java GridRipperCommandLine [options] -o OUTPUT PDF_OR_DIRECTORY...\n"
+         + "  Each PDF_OR_DIRECTORY can be a PDF, a directory of PDFs, a zip archive of PDFs (which is read\n"
+         + "  without unzipping it), or - to read a PDF from the standard input\n"
+         + "  -o, --output FILE          the output file\n"
+         + "  -f, --format FORMAT        csv, ods, xlsx or grc (columnar binary, see GridRipperColumnarReader);\n"
+         + "                             the default is from the output file name, or ods\n"
+         + "  -m, --mode MODE            phrases (default), words or characters\n"
+         + "  -c, --columns A,B,...      the columns to write, e.g. row_id,pdf_page,x_start,content (not ods)\n"
+         + "  -t, --threads N            the number of PDFs to rip at the same time (default: one per processor)\n"
+         + "  -p, --pages-per-task N     split PDFs with more than N pages into ranges that are ripped at the same time\n"
+         + "  -l, --line-tolerance N     how far (in points) below the start of a line an entry can be (default: 2);\n"
+         + "                             with em (e.g. 0.25em), a multiple of the font size of the line\n"
+         + "      --order-lines-by-x     write the entries of each line from left to right\n"
+         + "      --pipeline             rip one PDF at a time (implies -t 1), but sort and write each page on other\n"
+         + "                             threads while the next is read\n"
+         + "  -z, --compression-level N  how much to compress an .ods or .xlsx file, from 0 (fastest) to 9\n"
+         + "      --overwrite            replace the output file if it exists\n"
+         + "      --memory-budget MB     hold at most about this much of each PDF's streams in memory (the rest\n"
+         + "                             go to a scratch file), and let go of each page's fonts once it is done\n"
+         + "      --file-time-limit S    skip (and write nothing of) a PDF that takes longer than S seconds (with\n"
+         + "                             -p, a range of its pages that does), even if PDFBox is stuck in it\n"
+         + "      --page-time-limit S    skip (and write nothing of) a PDF with a page that takes longer than S\n"
+         + "                             seconds; with either limit, each PDF is held until it is done, except in\n"
+         + "                             a csv file (which is cut back instead)\n"
+         + "      --mmap                 memory-map each PDF file instead of reading it through a buffer\n"
+         + "      --report-heap          print the peak heap use while each PDF was ripped\n"
+         + "      --cache DIRECTORY      keep the pages ripped from each PDF in this directory, and reuse them when\n"
+         + "                             the same PDF is ripped again with the same mode and line settings\n"
+         + "      --cache-size MB        the most space the cache can take up (default: 1024); the entries used\n"
+         + "                             least recently are deleted first\n"
+         + "      --checkpoint           (csv only) record each PDF that is done in OUTPUT.checkpoint, so that the\n"
+         + "                             run can be resumed if it is stopped\n"
+         + "      --resume               carry on from OUTPUT.checkpoint, if it exists (implies --checkpoint)\n"
+         + "  -h, --help                 print this message\n"
+         + "Exit codes: 0 - no errors; 1 - errors, the output may be incomplete; 2 - fatal error; 64 - bad arguments";
+}
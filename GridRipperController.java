@@ -1,6 +1,19 @@
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Copyright 2017-2018 Michael A. Levy
@@ -23,11 +36,25 @@ import java.util.Arrays;
 public class GridRipperController implements Runnable
 {
    public GridRipperController(final File[] files, final GridRipperWriter out, final int mode)
+   {
+      this(GridRipperFileSource.of(files), out, mode);
+   }
+   
+   /**
+    * @param files
+    *           the PDFs to rip, which can be files, entries in zip archives,
+    *           or PDFs in memory (see GridRipperSource)
+    */
+   GridRipperController(final GridRipperSource[] files, final GridRipperWriter out, final int mode)
    {
       permissionsCount = columnNames.length;
       this.files = files;
+      this.peakHeap = new long[files.length];
+      Arrays.fill(peakHeap, -1);
+      this.skipReasons = new String[files.length];
       this.currentFileNumber = -1;
       this.out = out;
+      this.mode = mode;
       GridRipperPdfReader reader = null;
       try
       {
@@ -44,15 +71,213 @@ public class GridRipperController implements Runnable
       this.pid = -1;
    }
    
+   /**
+    * rip the PDFs. While the run is in progress, it can be watched through
+    * GridRipperMetrics (over JMX), and its progress is sent to the progress
+    * listeners.
+    */
    public void run()
+   {
+      final GridRipperMetrics metrics = GridRipperMetrics.get();
+      metrics.startRun(files.length);
+      try
+      {
+         rip();
+      }
+      finally
+      {
+         metrics.endRun();
+         final int errorStatus = out.getErrorStatus();
+         for(final GridRipperProgressListener l : listeners)
+         {
+            l.jobFinished(errorStatus);
+         }
+      }
+   }
+   
+   /**
+    * @param l
+    *           is told about the progress of the run; it should be added
+    *           before the run starts
+    */
+   public void addProgressListener(final GridRipperProgressListener l)
+   {
+      listeners.add(l);
+   }
+   
+   public void removeProgressListener(final GridRipperProgressListener l)
+   {
+      listeners.remove(l);
+   }
+   
+   /**
+    * @param millis
+    *           the least time between two pagesCompleted events for the same
+    *           PDF (the default is 100 ms); 0 reports every page
+    */
+   public void setProgressInterval(final long millis)
+   {
+      progressInterval = millis < 0 ? 0 : millis * 1000000;
+   }
+   
+   private void rip()
    {
       if(out.getErrorStatus() == GridRipperWriter._ERROR_STATUS_CRASH)
       {
          return;
       }
       
-      out.open(this);
+      final int first = start();
+      if(first < 0)
+      {
+         return;
+      }
+      
+      if(threads > 1)
+      {
+         if(ripParallel(first))
+         {
+            finish();
+         }
+         return;
+      }
+      if(pipelined && !holdsFiles())
+      {
+         if(ripPipelined(first))
+         {
+            finish();
+         }
+         return;
+      }
+      
+      // with time limits, the PDFs are ripped on a worker, so that one that
+      // gets stuck can be written off.
+      final ExecutorService worker = hasTimeLimits() ? newWorkers(1) : null;
+      try
+      {
+         for(int i = first; i < files.length; i++)
+         {
+            if(out.getErrorStatus() == GridRipperWriter._ERROR_STATUS_CRASH)
+            {
+               return;
+            }
+            
+            startFile();
+            boolean failed = false;
+            try
+            {
+               out.startPDF();
+               if(holdsFiles())
+               {
+                  ripHeld(i, worker);
+               }
+               else
+               {
+                  final GridRipperFileResult result = ripOn(new GridRipperRipTask(files[i], i + 1, this, in), worker);
+                  peakHeap[i] = result.getPeakHeap();
+                  if(in.isWrittenOff())
+                  {
+                     in = new GridRipperPdfReader(mode, this);
+                  }
+                  if(result.getError() != null)
+                  {
+                     throw result.getError();
+                  }
+               }
+               out.endPDF();
+            }
+            catch(final IOException iex)
+            {
+               fileFailed(i, iex);
+               failed = true;
+            }
+            pdfDone(i + 1, failed);
+            if(cancelled)
+            {
+               break;
+            }
+         }
+      }
+      finally
+      {
+         if(worker != null)
+         {
+            worker.shutdownNow();
+         }
+      }
+      finish();
+   }
+   
+   /**
+    * open the writer and write the heading, or (if the run is being resumed)
+    * carry on from the last checkpoint
+    * 
+    * @return the index of the first PDF to rip, or -1 after a fatal error
+    */
+   private int start()
+   {
+      if(checkpointFile != null && resume)
+      {
+         final String[] last = readCheckpoint();
+         if(out.getErrorStatus() == GridRipperWriter._ERROR_STATUS_CRASH)
+         {
+            return -1;
+         }
+         if(last != null)
+         {
+            return resume(last);
+         }
+      }
       
+      out.open(this);
+      writeHeading();
+      if(checkpointFile != null)
+      {
+         try
+         {
+            journal = new FileOutputStream(checkpointFile);
+            journal.write((_CHECKPOINT_HEADING + getConfiguration() + "\n").getBytes(_UTF8));
+         }
+         catch(final IOException iox)
+         {
+            iox.printStackTrace();
+            out.declareFatalError();
+            return -1;
+         }
+         checkpoint(0);
+      }
+      return 0;
+   }
+   
+   /**
+    * close the writer, and (if the run is complete, rather than cancelled)
+    * delete the checkpoint journal
+    */
+   private void finish()
+   {
+      out.close();
+      if(journal != null)
+      {
+         try
+         {
+            journal.close();
+         }
+         catch(final IOException iox)
+         {
+            iox.printStackTrace();
+         }
+         if(out.getErrorStatus() != GridRipperWriter._ERROR_STATUS_CRASH && !cancelled)
+         {
+            checkpointFile.delete();
+         }
+      }
+   }
+   
+   /**
+    * the title, run date and list of PDFs, and the names of the columns
+    */
+   private void writeHeading()
+   {
       out.startRow();
       out.writeText(GridRipperGUI._TITLE);
       
@@ -82,29 +307,691 @@ public class GridRipperController implements Runnable
       out.startRow();
       out.endRow();
       writeHeader();
-      
-      for(final File f : files)
+   }
+   
+   /**
+    * move on to the next PDF. This (like the rest of the progress events) is
+    * done by the thread that writes the output.
+    */
+   void startFile()
+   {
+      currentFileNumber++;
+      pdfPage = -1;
+      progressRows = 0;
+      progressPending = false;
+      lastProgress = System.nanoTime();
+      if(out instanceof GridRipperResumableWriter)
       {
-         if(out.getErrorStatus() == GridRipperWriter._ERROR_STATUS_CRASH)
+         pdfStartLength = ((GridRipperResumableWriter) out).getLength();
+      }
+      pdfStartId = id;
+      pdfStartPid = pid;
+      for(final GridRipperProgressListener l : listeners)
+      {
+         l.fileStarted(currentFileNumber + 1, files.length, files[currentFileNumber].getPath());
+      }
+   }
+   
+   /**
+    * called when a page has been written; tells the progress listeners, unless
+    * they were told about a page less than the progress interval ago (and this
+    * is not the last page of the PDF)
+    * 
+    * @param rows
+    *           the number of rows on the page
+    */
+   void pageWritten(final int rows)
+   {
+      if(listeners.isEmpty())
+      {
+         return;
+      }
+      progressRows += rows;
+      progressPending = true;
+      final long now = System.nanoTime();
+      if(now - lastProgress >= progressInterval || pdfPage + 1 >= pdfPagesTotal)
+      {
+         lastProgress = now;
+         sendProgress();
+      }
+   }
+   
+   private void sendProgress()
+   {
+      final int rows = progressRows;
+      progressRows = 0;
+      progressPending = false;
+      for(final GridRipperProgressListener l : listeners)
+      {
+         l.pagesCompleted(currentFileNumber + 1, pdfPage + 1, pdfPagesTotal, rows);
+      }
+   }
+   
+   /**
+    * record that a PDF could not be ripped (completely). A PDF that was
+    * skipped is not an error in the code, so its reason is recorded instead of
+    * a stack trace, and whatever was written of it is taken back out.
+    */
+   private void fileFailed(final int i, final IOException e)
+   {
+      out.declareError();
+      if(e instanceof GridRipperSkipException)
+      {
+         skipReasons[i] = ((GridRipperSkipException) e).getReason();
+         System.err.println(e.getMessage());
+         takeBack();
+      }
+      else
+      {
+         e.printStackTrace();
+      }
+   }
+   
+   /**
+    * cut the output back to where it was when the current PDF was started, and
+    * put the counters back, as if the PDF had been skipped before any of it
+    * was written. Only a GridRipperResumableWriter can be cut back; with the
+    * other writers, the rows that were written stay.
+    */
+   private void takeBack()
+   {
+      if(!(out instanceof GridRipperResumableWriter) || out.getErrorStatus() == GridRipperWriter._ERROR_STATUS_CRASH)
+      {
+         return;
+      }
+      final GridRipperResumableWriter w = (GridRipperResumableWriter) out;
+      try
+      {
+         if(w.getLength() != pdfStartLength)
+         {
+            w.truncate(pdfStartLength);
+         }
+      }
+      catch(final IOException iox)
+      {
+         iox.printStackTrace();
+         out.declareFatalError();
+         return;
+      }
+      id = pdfStartId;
+      pid = pdfStartPid;
+   }
+   
+   /**
+    * count a PDF as completed, tell the progress listeners, and record a
+    * checkpoint. A PDF that failed because the run was cancelled was
+    * abandoned rather than done, so there is no checkpoint after it, and a
+    * resumed run starts again from it.
+    * 
+    * @param failed
+    *           true if the PDF could not be ripped completely
+    */
+   private void pdfDone(final int n, final boolean failed)
+   {
+      GridRipperMetrics.get().pdfCompleted();
+      if(!listeners.isEmpty())
+      {
+         if(progressPending)
+         {
+            sendProgress();
+         }
+         for(final GridRipperProgressListener l : listeners)
          {
-            return;
+            l.fileFinished(n, failed);
          }
-         
-         currentFileNumber++;
+      }
+      if(!(failed && cancelled))
+      {
+         checkpoint(n);
+      }
+   }
+   
+   /**
+    * record in the journal that the first n PDFs are done: the counters, and
+    * the length of the output, which the writer makes sure is on the disk
+    * first. A line is only used when it is complete, so if the run stops while
+    * it is being written, the previous line is used.
+    */
+   private void checkpoint(final int n)
+   {
+      if(journal == null || out.getErrorStatus() == GridRipperWriter._ERROR_STATUS_CRASH)
+      {
+         return;
+      }
+      try
+      {
+         final long length = ((GridRipperResumableWriter) out).checkpoint();
+         final String line = n + "\t" + id + "\t" + pid + "\t" + length + "\t"
+               + (out.getErrorStatus() == GridRipperWriter._ERROR_STATUS_NO_ERROR ? 0 : 1) + "\t"
+               + (n == 0 ? "" : files[n - 1].getPath()) + "\n";
+         journal.write(line.getBytes(_UTF8));
+         journal.getFD().sync();
+      }
+      catch(final IOException iox)
+      {
+         // the run can go on, but it can no longer be resumed from here.
+         iox.printStackTrace();
+         out.declareError();
          try
          {
-            pdfPage = -1;
+            journal.close();
+         }
+         catch(final IOException iox2)
+         {
+            iox2.printStackTrace();
+         }
+         journal = null;
+      }
+   }
+   
+   /**
+    * read the journal of an earlier run, and check that it is for the same PDFs
+    * and settings as this one
+    * 
+    * @return the fields of its last complete line, or null if there is no
+    *         journal, or nothing in it to resume from (so the run starts over)
+    */
+   private String[] readCheckpoint()
+   {
+      final byte[] bytes;
+      try
+      {
+         bytes = Files.readAllBytes(checkpointFile.toPath());
+      }
+      catch(final NoSuchFileException nsfx)
+      {
+         return null;
+      }
+      catch(final IOException iox)
+      {
+         iox.printStackTrace();
+         out.declareFatalError();
+         return null;
+      }
+      
+      // the last "line" has no line break after it, so it is either empty or
+      // was cut off when the run stopped.
+      final String[] lines = new String(bytes, _UTF8).split("\n", -1);
+      if(lines.length < 2)
+      {
+         return null;
+      }
+      if(!lines[0].equals(_CHECKPOINT_HEADING + getConfiguration()))
+      {
+         System.err.println("The checkpoint " + checkpointFile + " is for different PDFs or settings.");
+         out.declareFatalError();
+         return null;
+      }
+      String[] last = null;
+      for(int i = 1; i < lines.length - 1; i++)
+      {
+         final String[] fields = lines[i].split("\t", -1);
+         if(fields.length == 6)
+         {
+            last = fields;
+         }
+      }
+      return last;
+   }
+   
+   /**
+    * cut the output back to a checkpoint and restore the counters
+    * 
+    * @return the index of the first PDF that was not done, or -1 after a fatal
+    *         error
+    */
+   private int resume(final String[] checkpoint)
+   {
+      final int n;
+      final long length;
+      try
+      {
+         n = Integer.parseInt(checkpoint[0]);
+         id = Integer.parseInt(checkpoint[1]);
+         pid = Integer.parseInt(checkpoint[2]);
+         length = Long.parseLong(checkpoint[3]);
+      }
+      catch(final NumberFormatException nfx)
+      {
+         System.err.println("The checkpoint " + checkpointFile + " cannot be read.");
+         out.declareFatalError();
+         return -1;
+      }
+      if(n < 0 || n > files.length || !checkpoint[5].equals(n == 0 ? "" : files[n - 1].getPath()))
+      {
+         System.err.println("The checkpoint " + checkpointFile + " is for different PDFs.");
+         out.declareFatalError();
+         return -1;
+      }
+      
+      try
+      {
+         ((GridRipperResumableWriter) out).resume(this, length);
+         journal = new FileOutputStream(checkpointFile, true);
+      }
+      catch(final IOException iox)
+      {
+         iox.printStackTrace();
+         out.declareFatalError();
+         return -1;
+      }
+      if(checkpoint[4].equals("1"))
+      {
+         out.declareError();
+      }
+      currentFileNumber = n - 1;
+      return n;
+   }
+   
+   private boolean ripParallel(final int first)
+   {
+      final ExecutorService pool = newWorkers(threads);
+      final ArrayList<ArrayList<GridRipperRipTask>> pending;
+      pending = new ArrayList<ArrayList<GridRipperRipTask>>(files.length);
+      // the PDFs that were done before the run was resumed are not submitted.
+      for(int i = 0; i < first; i++)
+      {
+         pending.add(null);
+      }
+      int submitted = 0;
+      int written = 0;
+      try
+      {
+         for(int i = first; i < files.length; i++)
+         {
+            if(out.getErrorStatus() == GridRipperWriter._ERROR_STATUS_CRASH)
+            {
+               return false;
+            }
+            
+            startFile();
             out.startPDF();
-            in.processFile(f);
-            out.endPDF();
+            IOException error = null;
+            // the rest of the ranges of pages of this PDF (after the first),
+            // which are known once its first range has been ripped.
+            int nextRange = 1;
+            int lastRange = 0;
+            for(int j = 0; j == 0 || j < pending.get(i).size() || nextRange <= lastRange; j++)
+            {
+               // the rest of this PDF's ranges are submitted before the PDFs
+               // after it, within the same read-ahead limit.
+               while(pending.size() <= i || j >= pending.get(i).size()
+                     || (submitted - written < threads * _TASKS_AHEAD_PER_THREAD
+                           && (nextRange <= lastRange || pending.size() < files.length)))
+               {
+                  if(pending.size() > i && nextRange <= lastRange)
+                  {
+                     pending.get(i).add(start(new GridRipperRipTask(files[i], i + 1, mode, this, nextRange,
+                           nextRange + pagesPerTask - 1), pool));
+                     nextRange += pagesPerTask;
+                  }
+                  else
+                  {
+                     pending.add(submit(pool, pending.size()));
+                  }
+                  submitted++;
+               }
+               final GridRipperFileResult result;
+               try
+               {
+                  result = watch(pending.get(i).get(j), pool);
+               }
+               catch(final InterruptedException iex)
+               {
+                  iex.printStackTrace();
+                  out.declareFatalError();
+                  return false;
+               }
+               catch(final ExecutionException eex)
+               {
+                  eex.printStackTrace();
+                  out.declareFatalError();
+                  return false;
+               }
+               pending.get(i).set(j, null);
+               written++;
+               if(j == 0 && pagesPerTask > 0 && !holdsFiles())
+               {
+                  nextRange = pagesPerTask + 1;
+                  lastRange = result.getPdfPages();
+               }
+               peakHeap[i] = Math.max(peakHeap[i], result.getPeakHeap());
+               
+               if(error == null)
+               {
+                  try
+                  {
+                     commit(result);
+                  }
+                  catch(final IOException iex)
+                  {
+                     error = iex;
+                  }
+                  if(error == null)
+                  {
+                     error = result.getError();
+                  }
+               }
+               if(error != null)
+               {
+                  // the rest of the PDF would not be written.
+                  lastRange = 0;
+               }
+            }
+            pending.set(i, null);
+            
+            if(error != null)
+            {
+               fileFailed(i, error);
+            }
+            else
+            {
+               out.endPDF();
+            }
+            pdfDone(i + 1, error != null);
+            if(cancelled)
+            {
+               break;
+            }
          }
-         catch(final IOException iex)
+      }
+      finally
+      {
+         pool.shutdownNow();
+         inFlight.clear();
+      }
+      return true;
+   }
+   
+   /**
+    * rip the PDFs one at a time on this thread, but hand each page over to a
+    * GridRipperPipeline to be finished and written, so that the reading of the
+    * next page does not wait for the writer. The writer is only used by the
+    * pipeline's committer thread, so starting and ending each PDF is passed to
+    * the pipeline too.
+    * 
+    * @return false if the run was aborted because of a fatal error
+    */
+   private boolean ripPipelined(final int first)
+   {
+      final GridRipperPipeline pipeline = new GridRipperPipeline(this, _PIPELINE_THREADS, _PIPELINE_PAGES);
+      final ExecutorService worker = hasTimeLimits() ? newWorkers(1) : null;
+      try
+      {
+         GridRipperPdfReader reader = new GridRipperPdfReader(mode, this, pipeline);
+         for(int i = first; i < files.length; i++)
          {
-            out.declareError();
-            iex.printStackTrace();
+            if(out.getErrorStatus() == GridRipperWriter._ERROR_STATUS_CRASH)
+            {
+               return false;
+            }
+            
+            pipeline.commit(new Runnable()
+            {
+               public void run()
+               {
+                  startFile();
+                  commitError = null;
+                  out.startPDF();
+               }
+            });
+            final GridRipperFileResult result = ripOn(new GridRipperRipTask(files[i], i + 1, this, reader), worker);
+            peakHeap[i] = result.getPeakHeap();
+            if(reader.isWrittenOff())
+            {
+               reader = new GridRipperPdfReader(mode, this, pipeline);
+            }
+            final IOException readError = result.getError();
+            final int done = i + 1;
+            pipeline.commit(new Runnable()
+            {
+               public void run()
+               {
+                  final IOException e = readError != null ? readError : commitError;
+                  if(e != null)
+                  {
+                     fileFailed(done - 1, e);
+                  }
+                  else
+                  {
+                     out.endPDF();
+                  }
+                  pdfDone(done, e != null);
+               }
+            });
+            if(cancelled)
+            {
+               break;
+            }
          }
       }
-      out.close();
+      catch(final IOException iox)
+      {
+         iox.printStackTrace();
+         out.declareFatalError();
+         return false;
+      }
+      finally
+      {
+         if(worker != null)
+         {
+            worker.shutdownNow();
+         }
+         pipeline.close();
+      }
+      return true;
+   }
+   
+   /**
+    * write a page that was read by the pipeline's reader. This is run by the
+    * pipeline's committer thread. Once a page of a PDF cannot be written, the
+    * rest of the PDF is skipped, as it would be if the PDF were ripped without
+    * the pipeline.
+    */
+   void commitPage(final GridRipperPage page)
+   {
+      if(commitError != null)
+      {
+         return;
+      }
+      startPage();
+      try
+      {
+         page.write(this);
+      }
+      catch(final IOException iex)
+      {
+         commitError = iex;
+      }
+   }
+   
+   /**
+    * submit the task that rips one PDF: either the whole PDF, or (if
+    * pagesPerTask is set) its first range of pages. The number of pages is not
+    * known until the PDF is loaded, so the rest of the ranges (each of which
+    * opens its own copy of the PDF) are submitted by ripParallel once the
+    * first range has been ripped, and are added to the PDF's tasks.
+    * 
+    * @return the PDF's tasks, in page order
+    */
+   private ArrayList<GridRipperRipTask> submit(final ExecutorService pool, final int i)
+   {
+      final ArrayList<GridRipperRipTask> tasks = new ArrayList<GridRipperRipTask>();
+      final int lastPage = pagesPerTask > 0 && !holdsFiles() ? pagesPerTask : Integer.MAX_VALUE;
+      tasks.add(start(new GridRipperRipTask(files[i], i + 1, mode, this, 1, lastPage), pool));
+      return tasks;
+   }
+   
+   /**
+    * @return a pool of n threads to rip PDFs on. They are daemon threads, so
+    *         that one that is left behind with a PDF that was written off (see
+    *         watch) does not keep the JVM running.
+    */
+   private static ExecutorService newWorkers(final int n)
+   {
+      return Executors.newFixedThreadPool(n, new ThreadFactory()
+      {
+         public Thread newThread(final Runnable r)
+         {
+            final Thread t = new Thread(r, "GridRipper rip");
+            t.setDaemon(true);
+            return t;
+         }
+      });
+   }
+   
+   /**
+    * start a task on one of the pool's threads, to be waited for with watch
+    */
+   private GridRipperRipTask start(final GridRipperRipTask task, final ExecutorService pool)
+   {
+      inFlight.add(task);
+      return task.start(pool);
+   }
+   
+   /**
+    * wait for a task that was started on one of the pool's threads. With time
+    * limits, the tasks that have been started are checked whenever one of them
+    * could have run out of time, and a PDF that has is written off (see
+    * GridRipperRipTask.writeOff), even if PDFBox is stuck in it and never gets
+    * back to the reader's own checks. Its thread is left behind, and another
+    * is added to the pool in its place.
+    * 
+    * @return the task's result, which for a PDF that was written off holds
+    *         only the reason
+    */
+   private GridRipperFileResult watch(final GridRipperRipTask task, final ExecutorService pool)
+         throws InterruptedException, ExecutionException
+   {
+      try
+      {
+         // a task that has not started yet is checked again after the
+         // shortest limit; without limits, there is nothing to check.
+         final long shortest;
+         if(!hasTimeLimits())
+         {
+            shortest = Long.MAX_VALUE;
+         }
+         else
+         {
+            shortest = (fileTimeLimit > 0 && (pageTimeLimit == 0 || fileTimeLimit < pageTimeLimit) ? fileTimeLimit
+                  : pageTimeLimit) * 1000000;
+         }
+         while(true)
+         {
+            long wait = shortest;
+            if(shortest != Long.MAX_VALUE)
+            {
+               for(final GridRipperRipTask t : inFlight)
+               {
+                  if(t.writeOff())
+                  {
+                     final ThreadPoolExecutor p = (ThreadPoolExecutor) pool;
+                     p.setMaximumPoolSize(p.getMaximumPoolSize() + 1);
+                     p.setCorePoolSize(p.getCorePoolSize() + 1);
+                  }
+                  wait = Math.min(wait, t.getTimeLeft());
+               }
+            }
+            try
+            {
+               return task.get(Math.max(wait, _WATCH_NANOS));
+            }
+            catch(final TimeoutException tx)
+            {
+               // one of the tasks may have run out of time.
+            }
+         }
+      }
+      finally
+      {
+         inFlight.remove(task);
+      }
+   }
+   
+   /**
+    * rip a PDF on this thread or, if there is a worker, on the worker, so that
+    * the PDF can be written off (see watch)
+    */
+   private GridRipperFileResult ripOn(final GridRipperRipTask task, final ExecutorService worker) throws IOException
+   {
+      if(worker == null)
+      {
+         return task.call();
+      }
+      try
+      {
+         return watch(start(task, worker), worker);
+      }
+      catch(final InterruptedException iex)
+      {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("Interrupted while waiting for a PDF to be ripped");
+      }
+      catch(final ExecutionException eex)
+      {
+         // the task catches IOExceptions, so anything else is passed on as it
+         // would be if the PDF were ripped on this thread.
+         final Throwable cause = eex.getCause();
+         if(cause instanceof Error)
+         {
+            throw (Error) cause;
+         }
+         throw (RuntimeException) cause;
+      }
+   }
+   
+   /**
+    * @return true if each PDF is ripped whole and held until it is done before
+    *         it is written: with a cache (so that it can be added to the
+    *         cache), or with time limits and a writer that cannot take a
+    *         skipped PDF back out (see takeBack), so that a PDF that is skipped
+    *         leaves no rows behind. This takes as much memory as the rows of
+    *         the PDF, and the pipeline and pagesPerTask are not used.
+    */
+   private boolean holdsFiles()
+   {
+      return cache != null || (hasTimeLimits() && !(out instanceof GridRipperResumableWriter));
+   }
+   
+   private boolean hasTimeLimits()
+   {
+      return fileTimeLimit > 0 || pageTimeLimit > 0;
+   }
+   
+   /**
+    * rip a PDF (on the worker, if there is one), and hold its pages until it is
+    * done: its pages are read from the cache if they are there, and otherwise
+    * ripped, held, added to the cache (if there is one), and then written.
+    */
+   private void ripHeld(final int i, final ExecutorService worker) throws IOException
+   {
+      final GridRipperRipTask task = new GridRipperRipTask(files[i], i + 1, mode, this, 1, Integer.MAX_VALUE);
+      final GridRipperFileResult result = ripOn(task, worker);
+      peakHeap[i] = result.getPeakHeap();
+      commit(result);
+      if(result.getError() != null)
+      {
+         throw result.getError();
+      }
+   }
+   
+   /**
+    * write the pages of a PDF that was ripped by a worker thread.
+    */
+   private void commit(final GridRipperFileResult result) throws IOException
+   {
+      if(result.getError() instanceof GridRipperSkipException)
+      {
+         // none of a skipped PDF is written.
+         throw result.getError();
+      }
+      setPdfPages(result.getPdfPages());
+      for(final GridRipperPage page : result.getPages())
+      {
+         startPage();
+         page.write(this);
+      }
    }
    
    private void writeHeader()
@@ -131,11 +1018,72 @@ public class GridRipperController implements Runnable
       return printPermissions[id];
    }
    
+   /**
+    * @param id
+    *           the column
+    * @param permission
+    *           whether the column should be written
+    */
+   void setPermission(final int id, final boolean permission)
+   {
+      printPermissions[id] = permission;
+   }
+   
+   /**
+    * @return the ids of the columns that will be written, in order
+    */
+   int[] getColumns()
+   {
+      int count = 0;
+      for(int i = 0; i < printPermissions.length; i++)
+      {
+         if(printPermissions[i])
+         {
+            count++;
+         }
+      }
+      final int[] columns = new int[count];
+      count = 0;
+      for(int i = 0; i < printPermissions.length; i++)
+      {
+         if(printPermissions[i])
+         {
+            columns[count++] = i;
+         }
+      }
+      return columns;
+   }
+   
    public String getColumnName(final int id)
    {
       return columnNames[id];
    }
    
+   /**
+    * @return the names of all of the columns that can be written
+    */
+   public String[] getColumnNames()
+   {
+      return columnNames.clone();
+   }
+   
+   /**
+    * @param name
+    *           the name of a column, such as "x_start"
+    * @return the id of the column, or -1 if there is no column with that name
+    */
+   public int getColumnId(final String name)
+   {
+      for(int i = 0; i < columnNames.length; i++)
+      {
+         if(columnNames[i].equals(name))
+         {
+            return i;
+         }
+      }
+      return -1;
+   }
+   
    public int getFileNumber()
    {
       return currentFileNumber + 1;
@@ -183,7 +1131,8 @@ public class GridRipperController implements Runnable
    
    /**
     * 
-    * @return
+    * @return the page of the PDF being ripped, counting from 0 (-1 before the
+    *         first page)
     */
    public int getPdfPage()
    {
@@ -206,23 +1155,268 @@ public class GridRipperController implements Runnable
       printPermissions[3] = false;
    }
    
+   /**
+    * @param t
+    *           the number of PDFs to rip at the same time. 1 (the default)
+    *           rips the PDFs one at a time, on the thread that runs this
+    *           controller.
+    */
+   void setThreadCount(final int t)
+   {
+      threads = t < 1 ? 1 : t;
+   }
+   
+   /**
+    * @param p
+    *           if greater than 0, a PDF with more pages than this is split into
+    *           ranges of this many pages, and the ranges are ripped at the same
+    *           time (this only has an effect if the thread count is greater
+    *           than 1). 0 (the default) rips each PDF as a single task.
+    */
+   void setPagesPerTask(final int p)
+   {
+      pagesPerTask = p < 0 ? 0 : p;
+   }
+   
+   /**
+    * @param p
+    *           if true, and the PDFs are ripped one at a time, each page is
+    *           sorted and written on other threads while the next page is read
+    *           (see GridRipperPipeline). This has no effect if the thread count
+    *           is greater than 1, since then the pages are already read by
+    *           worker threads and written by this one.
+    */
+   void setPipelined(final boolean p)
+   {
+      pipelined = p;
+   }
+   
+   /**
+    * @param journal
+    *           the file in which to record a checkpoint after each PDF, so
+    *           that the run can be resumed if it is stopped; null (the default)
+    *           records no checkpoints. The writer must be a
+    *           GridRipperResumableWriter. The journal is deleted when the run
+    *           is complete.
+    * @param resumeRun
+    *           if true, and the journal exists, the run carries on from the
+    *           last checkpoint in it, instead of starting over
+    */
+   void setCheckpoint(final File journal, final boolean resumeRun)
+   {
+      checkpointFile = journal;
+      resume = resumeRun;
+   }
+   
+   /**
+    * @param bytes
+    *           if greater than 0, each PDF is ripped with a memory budget of
+    *           about this many bytes for its streams (the rest go to a scratch
+    *           file), and with the resources of each page let go when the page
+    *           is done (see GridRipperPdfReader.processFile). This bounds the
+    *           memory used to read a PDF, but in a parallel run (or with a
+    *           cache) the rows of a PDF are still held until it is written;
+    *           pagesPerTask bounds those. 0 (the default) reads each PDF into
+    *           memory as needed.
+    */
+   void setMemoryBudget(final long bytes)
+   {
+      memoryBudget = bytes < 0 ? 0 : bytes;
+   }
+   
+   long getMemoryBudget()
+   {
+      return memoryBudget;
+   }
+   
+   /**
+    * @param millis
+    *           if greater than 0, a PDF that takes longer than this to rip is
+    *           skipped: none of its rows are kept, and the run carries on
+    *           with the next PDF (see getSkipReason). The PDF is ripped on a
+    *           worker thread, so that it is written off even if PDFBox is
+    *           stuck in it (see watch). The rows of a skipped PDF are taken
+    *           back out of a GridRipperResumableWriter's output; with other
+    *           writers, each PDF is held until it is done (see holdsFiles).
+    *           With pagesPerTask, the limit is for each range of pages. 0
+    *           (the default) is no limit.
+    */
+   void setFileTimeLimit(final long millis)
+   {
+      fileTimeLimit = millis < 0 ? 0 : millis;
+   }
+   
+   long getFileTimeLimit()
+   {
+      return fileTimeLimit;
+   }
+   
+   /**
+    * @param millis
+    *           if greater than 0, a PDF with a page that takes longer than this
+    *           to read is skipped, as with setFileTimeLimit. 0 (the default) is
+    *           no limit.
+    */
+   void setPageTimeLimit(final long millis)
+   {
+      pageTimeLimit = millis < 0 ? 0 : millis;
+   }
+   
+   long getPageTimeLimit()
+   {
+      return pageTimeLimit;
+   }
+   
+   /**
+    * stop the run as soon as it can be stopped, from any thread. The PDF that
+    * is being ripped is abandoned (and what was written of it is taken back
+    * out, if the writer is a GridRipperResumableWriter or PDFs are held, see
+    * holdsFiles), and the output is closed with the PDFs that were done
+    * before it. A checkpoint journal is kept, so the run can be resumed from
+    * the abandoned PDF.
+    */
+   public void cancel()
+   {
+      cancelled = true;
+   }
+   
+   public boolean isCancelled()
+   {
+      return cancelled;
+   }
+   
+   /**
+    * @param i
+    *           the index of a PDF
+    * @return why the PDF was skipped (because it took too long, or the run was
+    *         cancelled), or null if it was not skipped
+    */
+   public String getSkipReason(final int i)
+   {
+      return skipReasons[i];
+   }
+   
+   /**
+    * @param i
+    *           the index of a PDF
+    * @return the most heap memory (in bytes) used while it was ripped (see
+    *         GridRipperPdfReader.getPeakHeap), or -1 if it was not ripped (if
+    *         it was found in the cache, or the run was stopped before it)
+    */
+   public long getPeakHeap(final int i)
+   {
+      return peakHeap[i];
+   }
+   
+   /**
+    * @param c
+    *           if not null, the pages of each PDF are read from this cache if
+    *           they are there (instead of ripping the PDF), and added to it if
+    *           they are not. A PDF is then always ripped as a whole (so
+    *           pagesPerTask has no effect), and is held in memory until it has
+    *           been added to the cache, so the pipeline is not used either.
+    */
+   void setCache(final GridRipperExtractionCache c)
+   {
+      cache = c;
+   }
+   
+   GridRipperExtractionCache getCache()
+   {
+      return cache;
+   }
+   
+   /**
+    * @return the settings that decide the pages that are ripped from a PDF,
+    *         which are part of the key of its entry in the cache
+    */
+   String getExtractionSettings()
+   {
+      return mode + "\t" + lineTolerance + "\t" + lineToleranceRelative + "\t" + orderLinesByX;
+   }
+   
+   /**
+    * @return the settings that decide the output, which must be the same for a
+    *         run to be resumed from a checkpoint
+    */
+   private String getConfiguration()
+   {
+      return files.length + "\t" + mode + "\t" + Arrays.toString(getColumns()) + "\t" + lineTolerance + "\t"
+            + lineToleranceRelative + "\t" + orderLinesByX + "\t" + out.getClass().getName();
+   }
+   
+   /**
+    * @param tolerance
+    *           how far below the first entry of a line an entry can be and
+    *           still be on that line (and get the same y_smooth). The default
+    *           is 2 points.
+    * @param relativeToFontSize
+    *           if true, the tolerance is a multiple of the font size of the
+    *           first entry of the line instead of a number of points
+    * @param orderByX
+    *           if true, the entries of each line are written from left to
+    *           right; if false (the default), they are written in order of
+    *           y_start, then from left to right
+    */
+   void setLineClustering(final float tolerance, final boolean relativeToFontSize, final boolean orderByX)
+   {
+      lineTolerance = tolerance < 0 ? 0 : tolerance;
+      lineToleranceRelative = relativeToFontSize;
+      orderLinesByX = orderByX;
+   }
+   
+   /**
+    * apply the line clustering settings to a page before it is filled
+    */
+   void configureLineClustering(final GridRipperPage p)
+   {
+      p.setLineClustering(lineTolerance, lineToleranceRelative, orderLinesByX);
+   }
+   
    int incrementId()
    {
       return ++id;
    }
    
+   /**
+    * use up the row_ids for a whole page at once
+    * 
+    * @param n
+    *           the number of rows
+    * @return the first of the n row_ids
+    */
+   int reserveIds(final int n)
+   {
+      final int first = id + 1;
+      id += n;
+      return first;
+   }
+   
    void setPdfPages(final int p)
    {
       pdfPagesTotal = p;
    }
    
    /**
-    * @return 10 times the progress percentage; should only be 1000 if the file
-    *         is entirely complete.
+    * @return how far through the current PDF the run is, as a percentage (to a
+    *         tenth of a percent); should only be 100.0% if the file is entirely
+    *         complete.
     */
    String getPdfPercent()
    {
-      final int p = pdfPagesTotal <= 0 ? 0 : ((pdfPage < 0 ? 0 : pdfPage) * 1000) / pdfPagesTotal;
+      return getPercent(pdfPage < 0 ? 0 : pdfPage, pdfPagesTotal);
+   }
+   
+   /**
+    * @param pagesDone
+    *           the number of pages of a PDF that have been written
+    * @param pdfPages
+    *           the number of pages in the PDF
+    * @return the progress through the PDF as a percentage, such as " 5.0%"
+    */
+   static String getPercent(final int pagesDone, final int pdfPages)
+   {
+      final int p = pdfPages <= 0 ? 0 : (pagesDone * 1000) / pdfPages;
       String s = (p < 100 ? " " : "") + (p == 0 ? "0" : "") + p + "%.";
       return s.substring(0, s.length() - 3) + "." + s.substring(s.length() - 3);
    }
@@ -234,9 +1428,66 @@ public class GridRipperController implements Runnable
    private int pdfPagesTotal = 0;
    private int pid;
    
+   private int threads = 1;
+   private int pagesPerTask = 0;
+   private boolean pipelined = false;
+   
+   /**
+    * the error that stopped the writing of the current PDF, in a pipelined
+    * run (only used by the pipeline's committer thread)
+    */
+   private IOException commitError = null;
+   
+   private final CopyOnWriteArrayList<GridRipperProgressListener> listeners =
+         new CopyOnWriteArrayList<GridRipperProgressListener>();
+   private long progressInterval = _DEFAULT_PROGRESS_INTERVAL;
+   /**
+    * the progress since the last event; only used by the thread that writes
+    */
+   private long lastProgress = 0;
+   private int progressRows = 0;
+   private boolean progressPending = false;
+   private final int mode;
+   
+   private float lineTolerance = _DEFAULT_LINE_TOLERANCE;
+   private boolean lineToleranceRelative = false;
+   private boolean orderLinesByX = false;
+   
+   private GridRipperExtractionCache cache = null;
+   private long memoryBudget = 0;
+   private long fileTimeLimit = 0;
+   private long pageTimeLimit = 0;
+   private volatile boolean cancelled = false;
+   /**
+    * the length of the output, and the row and page counters, when the
+    * current PDF was started (see takeBack)
+    */
+   private long pdfStartLength = 0;
+   private int pdfStartId = -1;
+   private int pdfStartPid = -1;
+   private final String[] skipReasons;
+   
+   /**
+    * the peak heap use while each PDF was ripped
+    */
+   private final long[] peakHeap;
+   
+   private File checkpointFile = null;
+   private boolean resume = false;
+   private FileOutputStream journal = null;
+   
    private int currentFileNumber;
-   private final File[] files;
-   private final GridRipperPdfReader in;
+   private final GridRipperSource[] files;
+   /**
+    * the reader for PDFs that are ripped one at a time and not held (which is
+    * replaced when it has written a PDF off)
+    */
+   private GridRipperPdfReader in;
+   /**
+    * the tasks that have been started on a pool, and not yet waited for (see
+    * watch)
+    */
+   private final ArrayList<GridRipperRipTask> inFlight = new ArrayList<GridRipperRipTask>();
    
    private final boolean[] printPermissions = { true, true, false, false, true, true, true, true, true, true, true,
          true, true };
@@ -245,4 +1496,19 @@ public class GridRipperController implements Runnable
          "y_start", "y_smooth", "x_start", "x_end", "font_size", "rotation", "content" };
    
    public final int permissionsCount;
+   
+   static final float _DEFAULT_LINE_TOLERANCE = 2.0f;
+   
+   private static final int _TASKS_AHEAD_PER_THREAD = 2;
+   private static final int _PIPELINE_THREADS = 2;
+   private static final int _PIPELINE_PAGES = 16;
+   private static final long _DEFAULT_PROGRESS_INTERVAL = 100000000;
+   /**
+    * the shortest time (in nanoseconds) between two checks of the time limits
+    * of the tasks in flight
+    */
+   private static final long _WATCH_NANOS = 1000000;
+   
+   private static final String _CHECKPOINT_HEADING = "GridRipper checkpoint\t";
+   private static final Charset _UTF8 = Charset.forName("UTF-8");
 }
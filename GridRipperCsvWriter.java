@@ -1,6 +1,4 @@
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -11,6 +9,9 @@ import java.util.Date;
  * of the output goes into a single .csv file, which you might need to break up
  * into smaller files in order to import it to Excel.
  * 
+ * The file is written as UTF-8. Text is only quoted when it has to be (when it
+ * contains a comma, a quotation mark or a line break).
+ * 
  * Copyright 2017-2018 Michael A. Levy
  * 
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
@@ -28,28 +29,55 @@ import java.util.Date;
  * @author Michael
  *
  */
-class GridRipperCsvWriter implements GridRipperWriter
+class GridRipperCsvWriter implements GridRipperPageWriter, GridRipperResumableWriter
 {
    GridRipperCsvWriter(final File target)
    {
+      this.target = target;
       runStatus = GridRipperWriter._RUN_STATUS_NOT_STARTED;
       errorStatus = GridRipperWriter._ERROR_STATUS_NO_ERROR;
-      BufferedWriter o = null;
+   }
+   
+   public void open(final GridRipperController c)
+   {
+      runStatus = GridRipperWriter._RUN_STATUS_RUNNING;
       try
       {
-         o = new BufferedWriter(new FileWriter(target));
+         file = new GridRipperAsyncFileOutput(target);
+         out = new GridRipperOutputBuffer(file);
       }
       catch(final IOException iox)
       {
          iox.printStackTrace();
          errorStatus = GridRipperWriter._ERROR_STATUS_CRASH;
       }
-      out = o;
    }
    
-   public void open(final GridRipperController c)
+   public void resume(final GridRipperController c, final long length) throws IOException
    {
       runStatus = GridRipperWriter._RUN_STATUS_RUNNING;
+      file = new GridRipperAsyncFileOutput(target, length);
+      out = new GridRipperOutputBuffer(file);
+      start = length;
+   }
+   
+   public long checkpoint() throws IOException
+   {
+      out.drain();
+      file.sync();
+      return start + out.getBytesWritten();
+   }
+   
+   public long getLength()
+   {
+      return start + out.getBytesWritten();
+   }
+   
+   public void truncate(final long length) throws IOException
+   {
+      out.drain();
+      file.truncate(length);
+      start = length - out.getBytesWritten();
    }
    
    public void writeBlank()
@@ -60,7 +88,7 @@ class GridRipperCsvWriter implements GridRipperWriter
       }
       try
       {
-         out.write(_SEPARATOR);
+         out.write(_SEPARATOR_CHAR);
       }
       catch(final IOException iox)
       {
@@ -77,13 +105,8 @@ class GridRipperCsvWriter implements GridRipperWriter
       }
       try
       {
-         out.write("\"");
-         for(int i = 0; i < s.length(); i++)
-         {
-            out.write(literalCharacter(s.charAt(i)));
-         }
-         out.write("\"");
-         out.write(_SEPARATOR);
+         writeField(s);
+         out.write(_SEPARATOR_CHAR);
       }
       catch(final IOException iox)
       {
@@ -92,19 +115,25 @@ class GridRipperCsvWriter implements GridRipperWriter
       }
    }
    
-   private static String literalCharacter(final char c)
+   public void writeInt(int i)
    {
-      if(c == '\"')
+      if(errorStatus == GridRipperWriter._ERROR_STATUS_CRASH)
+      {
+         return;
+      }
+      try
       {
-         return "\"\"";
+         out.writeInt(i);
+         out.write(_SEPARATOR_CHAR);
       }
-      else
+      catch(final IOException iox)
       {
-         return "" + c;
+         iox.printStackTrace();
+         errorStatus = GridRipperWriter._ERROR_STATUS_CRASH;
       }
    }
    
-   public void writeInt(int i)
+   public void writeFloat(float f)
    {
       if(errorStatus == GridRipperWriter._ERROR_STATUS_CRASH)
       {
@@ -112,8 +141,8 @@ class GridRipperCsvWriter implements GridRipperWriter
       }
       try
       {
-         out.write(Integer.toString(i));
-         out.write(_SEPARATOR);
+         out.writeFloat(f);
+         out.write(_SEPARATOR_CHAR);
       }
       catch(final IOException iox)
       {
@@ -122,16 +151,79 @@ class GridRipperCsvWriter implements GridRipperWriter
       }
    }
    
-   public void writeFloat(float f)
+   public void writeDate(long d)
+   {
+      writeText(sdf.format(new Date(d)));
+   }
+   
+   public void writePage(final GridRipperPage page, final int[] columns, final GridRipperController c,
+         final int firstId)
    {
       if(errorStatus == GridRipperWriter._ERROR_STATUS_CRASH)
       {
          return;
       }
+      final int fileNumber = c.getFileNumber();
+      final String filePath = c.getFilePath();
+      final String fileName = c.getFileName();
+      final int pdfPage = c.getPdfPage() + 1;
+      final int totalPage = c.getPid() + 1;
+      final char[] chars = page.getChars();
       try
       {
-         out.write(Float.toString(f));
-         out.write(_SEPARATOR);
+         for(int j = 0; j < page.size(); j++)
+         {
+            final int r = page.getRow(j);
+            for(final int column : columns)
+            {
+               switch(column)
+               {
+                  case _COLUMN_ROW_ID:
+                     out.writeInt(firstId + j);
+                     break;
+                  case _COLUMN_FILE_NUMBER:
+                     out.writeInt(fileNumber);
+                     break;
+                  case _COLUMN_FILE_PATH:
+                     writeField(filePath);
+                     break;
+                  case _COLUMN_FILE_NAME:
+                     writeField(fileName);
+                     break;
+                  case _COLUMN_PDF_PAGE:
+                     out.writeInt(pdfPage);
+                     break;
+                  case _COLUMN_TOTAL_PAGE:
+                     out.writeInt(totalPage);
+                     break;
+                  case _COLUMN_Y_START:
+                     out.writeFloat(page.getYStart(r));
+                     break;
+                  case _COLUMN_Y_SMOOTH:
+                     out.writeFloat(page.getYSmooth(r));
+                     break;
+                  case _COLUMN_X_START:
+                     out.writeFloat(page.getXStart(r));
+                     break;
+                  case _COLUMN_X_END:
+                     out.writeFloat(page.getXEnd(r));
+                     break;
+                  case _COLUMN_FONT_SIZE:
+                     out.writeFloat(page.getFontSize(r));
+                     break;
+                  case _COLUMN_ROTATION:
+                     out.writeInt(page.getRotation(r));
+                     break;
+                  case _COLUMN_CONTENT:
+                     writeField(chars, page.getContentStart(r), page.getContentLength(r));
+                     break;
+                  default:
+                     break;
+               }
+               out.write(_SEPARATOR_CHAR);
+            }
+            out.write(_NEW_LINE);
+         }
       }
       catch(final IOException iox)
       {
@@ -140,9 +232,70 @@ class GridRipperCsvWriter implements GridRipperWriter
       }
    }
    
-   public void writeDate(long d)
+   /**
+    * write the text as a field, in quotation marks (with any quotation marks in
+    * it doubled) only if it contains a separator, a quotation mark or a line
+    * break
+    */
+   private void writeField(final String s) throws IOException
    {
-      writeText(sdf.format(new Date(d)));
+      final int length = s.length();
+      int i = 0;
+      while(i < length && !needsQuotes(s.charAt(i)))
+      {
+         i++;
+      }
+      if(i == length)
+      {
+         out.writeText(s);
+         return;
+      }
+      out.write('\"');
+      int run = 0;
+      for(i = 0; i < length; i++)
+      {
+         if(s.charAt(i) == '\"')
+         {
+            out.writeText(s, run, i + 1 - run);
+            run = i;
+         }
+      }
+      out.writeText(s, run, length - run);
+      out.write('\"');
+   }
+   
+   private void writeField(final char[] chars, final int start, final int length) throws IOException
+   {
+      final int end = start + length;
+      int i = start;
+      while(i < end && !needsQuotes(chars[i]))
+      {
+         i++;
+      }
+      if(i == end)
+      {
+         out.writeText(chars, start, length);
+         return;
+      }
+      // write the runs between quotation marks in bulk; each quotation mark
+      // ends one run and starts the next, so it is written twice.
+      out.write('\"');
+      int run = start;
+      for(i = start; i < end; i++)
+      {
+         if(chars[i] == '\"')
+         {
+            out.writeText(chars, run, i + 1 - run);
+            run = i;
+         }
+      }
+      out.writeText(chars, run, end - run);
+      out.write('\"');
+   }
+   
+   private static boolean needsQuotes(final char c)
+   {
+      return c == '\"' || c == _SEPARATOR_CHAR || c == '\n' || c == '\r';
    }
    
    public void startRow()
@@ -158,7 +311,7 @@ class GridRipperCsvWriter implements GridRipperWriter
       }
       try
       {
-         out.newLine();
+         out.write(_NEW_LINE);
       }
       catch(final IOException iox)
       {
@@ -190,6 +343,10 @@ class GridRipperCsvWriter implements GridRipperWriter
    public void close()
    {
       runStatus = GridRipperWriter._RUN_STATUS_DONE;
+      if(out == null)
+      {
+         return;
+      }
       try
       {
          out.close();
@@ -224,11 +381,24 @@ class GridRipperCsvWriter implements GridRipperWriter
       errorStatus = GridRipperWriter._ERROR_STATUS_CRASH;
    }
    
-   private final BufferedWriter out;
+   private final File target;
+   private GridRipperOutputBuffer out = null;
+   /**
+    * the length of the file before this run started writing to it (when it was
+    * resumed from a checkpoint), less anything that was written and then
+    * truncated
+    */
+   private long start = 0;
+   /**
+    * the file, which is written on a background thread
+    */
+   private GridRipperAsyncFileOutput file = null;
    
    private int runStatus;
    private int errorStatus;
    
    public static final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:MM:SS");
    public static final String _SEPARATOR = ",";
+   private static final char _SEPARATOR_CHAR = ',';
+   private static final byte[] _NEW_LINE = System.getProperty("line.separator").getBytes();
 }
@@ -0,0 +1,366 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * a directory of the pages ripped from PDFs, so that a PDF that has already
+ * been ripped (for example, to write a different set of columns or a different
+ * format) does not have to be parsed again. Each PDF's finished pages are held
+ * in one file, named for its key: a SHA-256 hash of the PDF's contents and of
+ * the settings that decide the pages (the mode and the line clustering). A PDF
+ * that is moved or renamed still has the same key, and a PDF that is changed
+ * does not.
+ * 
+ * The entries are compressed, and each one holds, in order, the number of
+ * pages in the PDF and the rows of each page (y_start, y_smooth, x_start,
+ * x_end, font_size, rotation and content), already sorted. The columns that
+ * depend on the run (row_id, the file and the page numbers) are not held;
+ * they are filled in when the pages are written.
+ * 
+ * The directory is kept under a maximum size by deleting the entries that
+ * were used least recently (an entry's modification time is updated each time
+ * it is read).
+ * 
+ * An entry is written to a temporary file and then renamed, so the cache can
+ * be used by several threads (and several runs) at once. Any problem with the
+ * cache is printed, and the PDF is simply ripped.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+class GridRipperExtractionCache
+{
+   /**
+    * @param directory
+    *           the directory that holds the entries (it is created if it does
+    *           not exist)
+    * @param maxBytes
+    *           the most that the entries can take up, in bytes
+    */
+   GridRipperExtractionCache(final File directory, final long maxBytes) throws IOException
+   {
+      if(!directory.isDirectory() && !directory.mkdirs())
+      {
+         throw new IOException("The cache directory cannot be created: " + directory);
+      }
+      this.directory = directory;
+      this.maxBytes = maxBytes;
+      // the maximum size may be smaller than it was for the last run.
+      evict();
+   }
+   
+   /**
+    * @param source
+    *           the PDF (all of which is read, to hash it)
+    * @param settings
+    *           the settings that decide the pages that are ripped from it
+    * @return the key of the PDF's entry
+    */
+   String getKey(final GridRipperSource source, final String settings) throws IOException
+   {
+      final MessageDigest digest;
+      try
+      {
+         digest = MessageDigest.getInstance("SHA-256");
+      }
+      catch(final NoSuchAlgorithmException nsax)
+      {
+         throw new IOException(nsax);
+      }
+      final byte[] buffer = new byte[_HASH_BUFFER_SIZE];
+      final InputStream in = source.openStream();
+      try
+      {
+         int n;
+         while((n = in.read(buffer)) != -1)
+         {
+            digest.update(buffer, 0, n);
+         }
+      }
+      finally
+      {
+         in.close();
+      }
+      digest.update((byte) 0);
+      digest.update((_VERSION + "\t" + settings).getBytes(_UTF8));
+      
+      final byte[] hash = digest.digest();
+      final StringBuilder key = new StringBuilder(hash.length * 2);
+      for(final byte b : hash)
+      {
+         key.append(_HEX[(b >> 4) & 0xF]).append(_HEX[b & 0xF]);
+      }
+      return key.toString();
+   }
+   
+   /**
+    * @return the pages held for the key (finished, ready to be written), or
+    *         null if there is no entry for it
+    */
+   GridRipperFileResult get(final String key)
+   {
+      final File f = entry(key);
+      if(!f.isFile())
+      {
+         misses.incrementAndGet();
+         return null;
+      }
+      try
+      {
+         final GridRipperFileResult result = read(f);
+         f.setLastModified(System.currentTimeMillis());
+         hits.incrementAndGet();
+         return result;
+      }
+      catch(final IOException iox)
+      {
+         // a damaged entry is dropped, and replaced once the PDF is ripped.
+         iox.printStackTrace();
+         f.delete();
+         misses.incrementAndGet();
+         return null;
+      }
+   }
+   
+   /**
+    * hold the pages of a PDF that was ripped without errors. This must be done
+    * before the pages are written (writing a page empties it).
+    */
+   void put(final String key, final GridRipperFileResult result)
+   {
+      File temp = null;
+      try
+      {
+         temp = File.createTempFile(key, _TEMP_EXTENSION, directory);
+         write(temp, result);
+         Files.move(temp.toPath(), entry(key).toPath(), StandardCopyOption.REPLACE_EXISTING,
+               StandardCopyOption.ATOMIC_MOVE);
+         temp = null;
+      }
+      catch(final IOException iox)
+      {
+         iox.printStackTrace();
+      }
+      finally
+      {
+         if(temp != null)
+         {
+            temp.delete();
+         }
+      }
+      evict();
+   }
+   
+   /**
+    * @return the number of PDFs whose pages were found in the cache
+    */
+   int getHits()
+   {
+      return hits.get();
+   }
+   
+   /**
+    * @return the number of PDFs whose pages were not found in the cache
+    */
+   int getMisses()
+   {
+      return misses.get();
+   }
+   
+   private File entry(final String key)
+   {
+      return new File(directory, key + _EXTENSION);
+   }
+   
+   private static void write(final File f, final GridRipperFileResult result) throws IOException
+   {
+      // a Deflater that is passed to a DeflaterOutputStream is not ended when
+      // the stream is closed.
+      final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new DeflaterOutputStream(new FileOutputStream(f), deflater), _BUFFER_SIZE));
+      try
+      {
+         out.write(_MAGIC);
+         out.writeInt(_VERSION);
+         out.writeInt(result.getPdfPages());
+         out.writeInt(result.getPages().size());
+         for(final GridRipperPage page : result.getPages())
+         {
+            final char[] chars = page.getChars();
+            out.writeInt(page.size());
+            for(int j = 0; j < page.size(); j++)
+            {
+               final int r = page.getRow(j);
+               out.writeFloat(page.getYStart(r));
+               out.writeFloat(page.getYSmooth(r));
+               out.writeFloat(page.getXStart(r));
+               out.writeFloat(page.getXEnd(r));
+               out.writeFloat(page.getFontSize(r));
+               out.writeShort(page.getRotation(r));
+               final int start = page.getContentStart(r);
+               final int length = page.getContentLength(r);
+               out.writeInt(length);
+               for(int k = start; k < start + length; k++)
+               {
+                  out.writeChar(chars[k]);
+               }
+            }
+         }
+      }
+      finally
+      {
+         out.close();
+         deflater.end();
+      }
+   }
+   
+   private static GridRipperFileResult read(final File f) throws IOException
+   {
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(
+            new FileInputStream(f)), _BUFFER_SIZE));
+      try
+      {
+         final byte[] magic = new byte[_MAGIC.length];
+         in.readFully(magic);
+         if(!Arrays.equals(magic, _MAGIC) || in.readInt() != _VERSION)
+         {
+            throw new IOException("Not a cache entry: " + f);
+         }
+         final GridRipperFileResult result = new GridRipperFileResult();
+         result.setPdfPages(in.readInt());
+         final int pages = in.readInt();
+         char[] chars = new char[64];
+         for(int p = 0; p < pages; p++)
+         {
+            final int rows = in.readInt();
+            final GridRipperPage page = new GridRipperPage(rows);
+            for(int j = 0; j < rows; j++)
+            {
+               final float yStart = in.readFloat();
+               final float ySmooth = in.readFloat();
+               final float xStart = in.readFloat();
+               final float xEnd = in.readFloat();
+               final float fontSize = in.readFloat();
+               final int rotation = in.readShort();
+               final int length = in.readInt();
+               if(length > chars.length)
+               {
+                  chars = new char[Math.max(length, chars.length * 2)];
+               }
+               for(int k = 0; k < length; k++)
+               {
+                  chars[k] = in.readChar();
+               }
+               page.addFinished(yStart, ySmooth, xStart, xEnd, fontSize, rotation, chars, 0, length);
+            }
+            result.addPage(page);
+         }
+         return result;
+      }
+      finally
+      {
+         in.close();
+      }
+   }
+   
+   /**
+    * delete the least recently used entries until the rest fit in maxBytes
+    */
+   private synchronized void evict()
+   {
+      final File[] entries = directory.listFiles();
+      if(entries == null)
+      {
+         return;
+      }
+      long total = 0;
+      int count = 0;
+      final long[] modified = new long[entries.length];
+      final File[] found = new File[entries.length];
+      for(final File f : entries)
+      {
+         if(f.getName().endsWith(_EXTENSION))
+         {
+            total += f.length();
+            modified[count] = f.lastModified();
+            found[count++] = f;
+         }
+      }
+      if(total <= maxBytes)
+      {
+         return;
+      }
+      
+      // the modification times are read once, before sorting, since reading
+      // an entry (in another thread) changes its time.
+      final Integer[] order = new Integer[count];
+      for(int i = 0; i < count; i++)
+      {
+         order[i] = i;
+      }
+      Arrays.sort(order, new Comparator<Integer>()
+      {
+         public int compare(final Integer a, final Integer b)
+         {
+            return Long.compare(modified[a], modified[b]);
+         }
+      });
+      for(int i = 0; i < count && total > maxBytes; i++)
+      {
+         final File f = found[order[i]];
+         final long length = f.length();
+         if(f.delete())
+         {
+            total -= length;
+         }
+      }
+   }
+   
+   private final File directory;
+   private final long maxBytes;
+   private final AtomicInteger hits = new AtomicInteger();
+   private final AtomicInteger misses = new AtomicInteger();
+   
+   static final long _DEFAULT_MAX_BYTES = 1024L * 1024 * 1024;
+   
+   private static final String _EXTENSION = ".grx";
+   private static final String _TEMP_EXTENSION = ".tmp";
+   private static final byte[] _MAGIC = { 'G', 'R', 'X', 'C' };
+   private static final int _VERSION = 1;
+   private static final int _BUFFER_SIZE = 64 * 1024;
+   private static final int _HASH_BUFFER_SIZE = 64 * 1024;
+   private static final char[] _HEX = "0123456789abcdef".toCharArray();
+   private static final Charset _UTF8 = Charset.forName("UTF-8");
+}
@@ -0,0 +1,99 @@
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * when PDFs are ripped in parallel, the pages of each PDF are held in one of
+ * these objects until the controller is ready to write them. The pages are
+ * compact copies of the reader's page, and are already sorted/smoothed, but have not been numbered (row_id, total_page,
+ * etc.), because the numbering depends on everything that is written before
+ * them.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+class GridRipperFileResult
+{
+   GridRipperFileResult()
+   {
+      pages = new ArrayList<GridRipperPage>();
+   }
+   
+   void addPage(final GridRipperPage page)
+   {
+      pages.add(page);
+   }
+   
+   ArrayList<GridRipperPage> getPages()
+   {
+      return pages;
+   }
+   
+   /**
+    * @param p
+    *           the number of pages in the PDF (not just the number ripped)
+    */
+   void setPdfPages(final int p)
+   {
+      pdfPages = p;
+   }
+   
+   int getPdfPages()
+   {
+      return pdfPages;
+   }
+   
+   /**
+    * @param iox
+    *           the exception that stopped the ripping of this PDF. The pages
+    *           that were ripped before the exception are still written, the
+    *           same as they would be if the PDFs were ripped one at a time.
+    */
+   void setError(final IOException iox)
+   {
+      error = iox;
+   }
+   
+   IOException getError()
+   {
+      return error;
+   }
+   
+   /**
+    * @param bytes
+    *           the most heap memory used while the pages were ripped (see
+    *           GridRipperPdfReader.getPeakHeap)
+    */
+   void setPeakHeap(final long bytes)
+   {
+      peakHeap = bytes;
+   }
+   
+   /**
+    * @return the most heap memory used while the pages were ripped, or -1 if
+    *         they were not ripped (for example, if they were read from a
+    *         cache)
+    */
+   long getPeakHeap()
+   {
+      return peakHeap;
+   }
+   
+   private final ArrayList<GridRipperPage> pages;
+   private int pdfPages = 0;
+   private IOException error = null;
+   private long peakHeap = -1;
+}
@@ -0,0 +1,114 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.ScratchFile;
+import org.apache.pdfbox.pdfparser.PDFParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * a PDF on disk. The PDF is read either through PDFBox's own buffered file
+ * reader, or (if it is mapped) through a GridRipperMappedRead, which maps the
+ * file into memory, so that reading it does not copy it through a buffer and
+ * the operating system can share the pages between runs.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+class GridRipperFileSource implements GridRipperSource
+{
+   GridRipperFileSource(final File f)
+   {
+      this(f, false);
+   }
+   
+   /**
+    * @param mapped
+    *           if true, the file is memory-mapped when it is loaded
+    */
+   GridRipperFileSource(final File f, final boolean mapped)
+   {
+      this.f = f;
+      this.mapped = mapped;
+   }
+   
+   /**
+    * @return a source for each of the files, in order
+    */
+   static GridRipperSource[] of(final File[] files)
+   {
+      final GridRipperSource[] sources = new GridRipperSource[files.length];
+      for(int i = 0; i < files.length; i++)
+      {
+         sources[i] = new GridRipperFileSource(files[i]);
+      }
+      return sources;
+   }
+   
+   public String getPath()
+   {
+      return f.getPath();
+   }
+   
+   public String getParent()
+   {
+      // a relative name, such as a.pdf, has no parent.
+      final String parent = f.getParent();
+      return parent == null ? "" : parent;
+   }
+   
+   public String getName()
+   {
+      return f.getName();
+   }
+   
+   public PDDocument load(final MemoryUsageSetting memory) throws IOException
+   {
+      if(!mapped)
+      {
+         return PDDocument.load(f, memory);
+      }
+      // this is how PDDocument.load opens a file, but with the mapped reader.
+      // The document closes the reader and the scratch file when it is closed.
+      final GridRipperMappedRead source = new GridRipperMappedRead(f);
+      ScratchFile scratch = null;
+      try
+      {
+         scratch = new ScratchFile(memory);
+         final PDFParser parser = new PDFParser(source, "", null, null, scratch);
+         parser.parse();
+         return parser.getPDDocument();
+      }
+      catch(final IOException iox)
+      {
+         IOUtils.closeQuietly(scratch);
+         IOUtils.closeQuietly(source);
+         throw iox;
+      }
+   }
+   
+   public InputStream openStream() throws IOException
+   {
+      return new FileInputStream(f);
+   }
+   
+   private final File f;
+   private final boolean mapped;
+}
@@ -24,6 +24,7 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 /**
@@ -46,7 +47,7 @@ import javax.swing.filechooser.FileNameExtensionFilter;
  * @author Michael
  *
  */
-public class GridRipperGUI extends JFrame implements ActionListener, ComponentListener, Runnable
+public class GridRipperGUI extends JFrame implements ActionListener, ComponentListener, GridRipperProgressListener
 {
    /**
     * 
@@ -97,6 +98,7 @@ public class GridRipperGUI extends JFrame implements ActionListener, ComponentLi
       runButton.addActionListener(this);
       helpButton.addActionListener(this);
       returnButton.addActionListener(this);
+      cancelButton.addActionListener(this);
       
       list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
       
@@ -120,6 +122,7 @@ public class GridRipperGUI extends JFrame implements ActionListener, ComponentLi
       statusView.setLayout(new BoxLayout(statusView, BoxLayout.Y_AXIS));
       statusView.add(run1);
       statusView.add(run2);
+      statusView.add(cancelButton);
       
       helpView.setLayout(new BorderLayout());
       helpView.add(buffer1, BorderLayout.WEST);
@@ -164,8 +167,6 @@ public class GridRipperGUI extends JFrame implements ActionListener, ComponentLi
       helpView.setPreferredSize(d);
       statusView.setMinimumSize(d);
       statusView.setPreferredSize(d);
-      
-      new Thread(this).start();
    }
    
    private void loadFonts()
@@ -228,10 +229,34 @@ public class GridRipperGUI extends JFrame implements ActionListener, ComponentLi
       {
          updateView(fileView);
       }
+      else if(source == cancelButton)
+      {
+         if(c != null)
+         {
+            c.cancel();
+            cancelButton.setEnabled(false);
+            run1.setText(_CANCELLING);
+         }
+      }
       else if(source == csvButton)
       {
-         csv = !(csv);
-         csvButton.setText(csv ? _CSV_MESSAGE : _ODS_MESSAGE);
+         format++;
+         if(format == 3)
+         {
+            format = 0;
+         }
+         if(format == 0)
+         {
+            csvButton.setText(_ODS_MESSAGE);
+         }
+         else if(format == 1)
+         {
+            csvButton.setText(_CSV_MESSAGE);
+         }
+         else
+         {
+            csvButton.setText(_XLSX_MESSAGE);
+         }
       }
       else if(source == wordsButton)
       {
@@ -323,7 +348,7 @@ public class GridRipperGUI extends JFrame implements ActionListener, ComponentLi
             final int dot = targetOut.getName().indexOf(".");
             if(dot == -1)
             {
-               targetOut = new File(targetOut.getParentFile(), targetOut.getName() + (csv ? ".csv" : ".ods"));
+               targetOut = new File(targetOut.getParentFile(), targetOut.getName() + _EXTENSIONS[format]);
             }
             
             if(targetOut.exists())
@@ -350,9 +375,24 @@ public class GridRipperGUI extends JFrame implements ActionListener, ComponentLi
                files[i] = (File) filesOb[i];
             }
             
-            final GridRipperWriter out = csv ? new GridRipperCsvWriter(targetOut)
-                  : new GridRipperOdsStreamWriter(targetOut);
+            final GridRipperWriter out;
+            if(format == 1)
+            {
+               out = new GridRipperCsvWriter(targetOut);
+            }
+            else if(format == 2)
+            {
+               out = new GridRipperXlsxStreamWriter(targetOut);
+            }
+            else
+            {
+               out = new GridRipperOdsStreamWriter(targetOut);
+            }
             c = new GridRipperController(files, out, mode);
+            c.setThreadCount(Runtime.getRuntime().availableProcessors());
+            c.addProgressListener(this);
+            run1.setText(_RUNNING_NO_ERRORS);
+            run2.setText("");
             new Thread(c).start();
          }
       }
@@ -362,41 +402,106 @@ public class GridRipperGUI extends JFrame implements ActionListener, ComponentLi
       }
    }
    
-   public void run()
+   /**
+    * the progress listener methods are called by the controller's thread; they
+    * update the status view on the Swing event thread.
+    */
+   public void fileStarted(final int fileNumber, final int fileCount, final String path)
    {
-      while(c == null || c.out.getRunStatus() != GridRipperWriter._RUN_STATUS_DONE)
+      SwingUtilities.invokeLater(new Runnable()
       {
-         try
+         public void run()
          {
-            Thread.sleep(500);
+            showProgress(fileNumber, fileCount, GridRipperController.getPercent(0, 0));
          }
-         catch(final InterruptedException iex)
+      });
+   }
+   
+   public void pagesCompleted(final int fileNumber, final int pagesDone, final int pdfPages, final int rows)
+   {
+      final int fileCount = c.getFileCount();
+      final String progress = GridRipperController.getPercent(pagesDone, pdfPages);
+      SwingUtilities.invokeLater(new Runnable()
+      {
+         public void run()
          {
-            
+            showProgress(fileNumber, fileCount, progress);
          }
-         if(c != null && currentView == statusView)
+      });
+   }
+   
+   public void fileFinished(final int fileNumber, final boolean errors)
+   {
+      if(errors)
+      {
+         SwingUtilities.invokeLater(new Runnable()
          {
-            updateStatus(c);
+            public void run()
+            {
+               if(!c.isCancelled())
+               {
+                  run1.setText(_RUNNING_WITH_ERRORS);
+               }
+            }
+         });
+      }
+   }
+   
+   public void jobFinished(final int errorStatus)
+   {
+      SwingUtilities.invokeLater(new Runnable()
+      {
+         public void run()
+         {
+            finished(errorStatus);
          }
+      });
+   }
+   
+   private void showProgress(final int fileNumber, final int fileCount, String progress)
+   {
+      if(progress.charAt(0) == '.')
+      {
+         progress = "0" + progress;
+      }
+      if(fileCount == 1)
+      {
+         run2.setText(_PROCESSING_FILE + progress);
+      }
+      else
+      {
+         run2.setText(_PROCESSING_FILE + fileNumber + " of " + fileCount + " - " + progress);
       }
-      if(c != null)
+   }
+   
+   private void finished(final int errorStatus)
+   {
+      run2.setText("");
+      cancelButton.setEnabled(false);
+      if(c.isCancelled() && errorStatus != GridRipperWriter._ERROR_STATUS_CRASH)
       {
-         updateStatus(c);
+         run1.setText(_CANCELLED);
+         JOptionPane.showMessageDialog(this,
+               "Execution Cancelled. The output has the PDFs that were finished before it was cancelled.",
+               "Execution Cancelled", JOptionPane.WARNING_MESSAGE);
       }
-      if(c.out.getErrorStatus() == GridRipperWriter._ERROR_STATUS_NO_ERROR)
+      else if(errorStatus == GridRipperWriter._ERROR_STATUS_NO_ERROR)
       {
+         run1.setText(_NOT_RUNNING_NO_ERRORS);
          JOptionPane.showMessageDialog(this, "Execution Complete with no errors. Press okay to exit GridRipper.",
                "Execution Complete", JOptionPane.INFORMATION_MESSAGE);
          System.exit(0);
       }
-      else if(c.out.getErrorStatus() == GridRipperWriter._ERROR_STATUS_ERROR)
+      else if(errorStatus == GridRipperWriter._ERROR_STATUS_ERROR)
       {
+         run1.setText(_NOT_RUNNING_WITH_ERRORS);
          JOptionPane.showMessageDialog(this,
                "Execution Complete but there were errors. The output may be corrupt or incomplete.",
                "Execution Complete", JOptionPane.WARNING_MESSAGE);
       }
       else
       {
+         run1.setText(_NOT_RUNNING_FATAL_ERROR);
          JOptionPane.showMessageDialog(this,
                "GridRipper could not complete the requested action because of a fatal error.", "Execution Aborted",
                JOptionPane.WARNING_MESSAGE);
@@ -412,63 +517,6 @@ public class GridRipperGUI extends JFrame implements ActionListener, ComponentLi
       setSize(dimensionMain);
    }
    
-   private void updateStatus(final GridRipperController c)
-   {
-      final int fileNumber = c.getFileNumber();
-      String progress = c.getPdfPercent();
-      if(progress.charAt(0) == '.')
-      {
-         progress = "0" + progress;
-      }
-      final int runStatus = c.out.getRunStatus();
-      final int errorStatus = c.out.getErrorStatus();
-      
-      if(runStatus == GridRipperWriter._RUN_STATUS_RUNNING)
-      {
-         if(errorStatus == GridRipperWriter._ERROR_STATUS_NO_ERROR)
-         {
-            run1.setText(_RUNNING_NO_ERRORS);
-         }
-         else if(errorStatus == GridRipperWriter._ERROR_STATUS_ERROR)
-         {
-            run1.setText(_RUNNING_WITH_ERRORS);
-         }
-         else
-         {
-            run1.setText(_RUNNING_FATAL_ERROR);
-         }
-         if(filesToRip.size() == 1)
-         {
-            run2.setText(_PROCESSING_FILE + progress);
-         }
-         else
-         {
-            run2.setText(_PROCESSING_FILE + fileNumber + " of " + filesToRip.size() + " - " + progress);
-         }
-      }
-      else if(runStatus == GridRipperWriter._RUN_STATUS_NOT_STARTED)
-      {
-         run1.setText(_NOT_STARTED);
-         run2.setText(_NOT_STARTED);
-      }
-      else
-      {
-         if(errorStatus == GridRipperWriter._ERROR_STATUS_NO_ERROR)
-         {
-            run1.setText(_NOT_RUNNING_NO_ERRORS);
-         }
-         else if(errorStatus == GridRipperWriter._ERROR_STATUS_ERROR)
-         {
-            run1.setText(_NOT_RUNNING_WITH_ERRORS);
-         }
-         else
-         {
-            run1.setText(_NOT_RUNNING_FATAL_ERROR);
-         }
-         run2.setText("");
-      }
-   }
-   
    public void componentResized(final ComponentEvent cev)
    {
       Dimension d = getSize();
@@ -522,6 +570,7 @@ public class GridRipperGUI extends JFrame implements ActionListener, ComponentLi
    
    private final JLabel help = new JLabel(_HELP);
    private final JButton returnButton = new JButton(_RETURN);
+   private final JButton cancelButton = new JButton(_CANCEL_MESSAGE);
    
    private final JLabel run1 = new JLabel(_NOT_STARTED);
    private final JLabel run2 = new JLabel(_NOT_STARTED);
@@ -533,7 +582,7 @@ public class GridRipperGUI extends JFrame implements ActionListener, ComponentLi
    private final Dimension dimensionMain;
    private final Dimension dimensionJFC;
    
-   private boolean csv = false;
+   private int format = 0;
    private int mode = 0;
    private GridRipperController c = null;
    
@@ -553,6 +602,8 @@ public class GridRipperGUI extends JFrame implements ActionListener, ComponentLi
    private static final String _FILE_CHOOSER_OUT_MESSAGE = "Select Output File.";
    private static final String _ODS_MESSAGE = ".ods";
    private static final String _CSV_MESSAGE = ".csv";
+   private static final String _XLSX_MESSAGE = ".xlsx";
+   private static final String[] _EXTENSIONS = { _ODS_MESSAGE, _CSV_MESSAGE, _XLSX_MESSAGE };
    private static final String _PHRASES_MESSAGE = "Phrases";
    private static final String _WORDS_MESSAGE = "Words";
    private static final String _CHARACTERS_MESSAGE = "Characters";
@@ -562,13 +613,15 @@ public class GridRipperGUI extends JFrame implements ActionListener, ComponentLi
    private static final String _NOT_STARTED = "Not Started.";
    private static final String _RUNNING_NO_ERRORS = "Running - No Errors.";
    private static final String _RUNNING_WITH_ERRORS = "Running - There are errors, which means the data output may be incomplete or corrupted. (GridRipper does not alter the input PDFs.)";
-   private static final String _RUNNING_FATAL_ERROR = "Fatal Error - GridRipper will stop running and there will be no output. (GridRipper does not alter the input PDFs.)";
    private static final String _NOT_RUNNING_NO_ERRORS = "Finished Running - No Errors.";
    private static final String _NOT_RUNNING_WITH_ERRORS = "Finished Running - There are errors, which means the data output may be incomplete or corrupted. (GridRipper does not alter the input PDFs.)";
    private static final String _NOT_RUNNING_FATAL_ERROR = "Fatal Error - GridRipper has stopped running and there will be no output. (GridRipper does not alter the input PDFs.)";
    private static final String _PROCESSING_FILE = "Processing File: ";
+   private static final String _CANCEL_MESSAGE = "Cancel";
+   private static final String _CANCELLING = "Cancelling - GridRipper will stop once it can, and the output will have the PDFs that were finished.";
+   private static final String _CANCELLED = "Cancelled - The output has the PDFs that were finished before GridRipper was cancelled.";
    
-   private static final String _HELP = "<html>\u2003<p><b><u>Using GridRipper</u>:</b><ul><li>Select the PDF(s) to rip.  (Ripping does not change the PDFs.)  Use the [ + ] button to add PDFs.</li><li>You can remove PDFs from the list with the [ - ] button, or re-order them with the [ \u2191 ] and [ \u2193 ] buttons.</li><li>Choose the output format (.ods or .csv  both are spreadsheet formats that can be opened with Microsoft Excel, Apache OpenOffice, or LibreOffice).</li><li>Choose whether the content is arranged as phrases, words, or letters (phrases is recommended).</li><li>Press Execute to begin ripping. You will be asked to choose an output file. If this file exists, you will be asked whether to overwrite it.</ul><br><p><b><u>About GridRipper</u>:</b><br>\u2003\u2003This tool was designed to address a very specific problem: during litigation, data is commonly provided in PDF format (or in paper, that you can scan into PDF format). The data in the PDFs may be critical to your case, but you can only access it by eyeballing it, or by copying it out in an awkward way, such as selecting everything on a page, copying it, and pasting it into a Word document. Where the PDF has columns of data, usually the Word document wont have the data lined up in neat columns: the data will be a jumbled mess. Un-jumbling it can take hours. Typing the data into a spreadsheet by hand can take hours.<br>\u2003<p>\u2003\u2003GridRipper pulls the content of the PDFs out, but saves contextual information (the location on the page of each phrase/word).  With this contextual information, you can easily, quickly, and systematically determine which row/column each datum belongs in  so you can quickly and reliably create a spreadsheet with the data organized the same way it was in the PDF (or, more to the point: the same way it was organized in the document that was used to generate the PDF).<br>\u2003<p>\u2003\u2003GridRipper can only see text that is recognized by Acrobat. If your document is a scan of a printed page, Acrobat will not see the words unless Optical Character Recognition (OCR) is performed. The OCR process is rarely perfect and often results in errors. But I have used GridRipper successfully when OCR is high quality.<br>\u2003<p><b><u>About Michael Levy</u>:</b><p>\u2003\u2003Mr. Levy is an employment lawyer in the San Francisco Bay Area/East Bay.  He represents employees against abusive employers in claims for unpaid or underpaid wages, harassment, discrimination, wrongful termination, and other workplace grievances.  For questions or technical support, contact michael@levycivilrights.com.  Please include GridRipper in the subject line of your email.<p>\u2003<p>\u2003<p>\u2003</html>";
+   private static final String _HELP = "<html>\u2003<p><b><u>Using GridRipper</u>:</b><ul><li>Select the PDF(s) to rip.  (Ripping does not change the PDFs.)  Use the [ + ] button to add PDFs.</li><li>You can remove PDFs from the list with the [ - ] button, or re-order them with the [ \u2191 ] and [ \u2193 ] buttons.</li><li>Choose the output format (.ods, .csv or .xlsx  all are spreadsheet formats that can be opened with Microsoft Excel, Apache OpenOffice, or LibreOffice).</li><li>Choose whether the content is arranged as phrases, words, or letters (phrases is recommended).</li><li>Press Execute to begin ripping. You will be asked to choose an output file. If this file exists, you will be asked whether to overwrite it.</ul><br><p><b><u>About GridRipper</u>:</b><br>\u2003\u2003This tool was designed to address a very specific problem: during litigation, data is commonly provided in PDF format (or in paper, that you can scan into PDF format). The data in the PDFs may be critical to your case, but you can only access it by eyeballing it, or by copying it out in an awkward way, such as selecting everything on a page, copying it, and pasting it into a Word document. Where the PDF has columns of data, usually the Word document wont have the data lined up in neat columns: the data will be a jumbled mess. Un-jumbling it can take hours. Typing the data into a spreadsheet by hand can take hours.<br>\u2003<p>\u2003\u2003GridRipper pulls the content of the PDFs out, but saves contextual information (the location on the page of each phrase/word).  With this contextual information, you can easily, quickly, and systematically determine which row/column each datum belongs in  so you can quickly and reliably create a spreadsheet with the data organized the same way it was in the PDF (or, more to the point: the same way it was organized in the document that was used to generate the PDF).<br>\u2003<p>\u2003\u2003GridRipper can only see text that is recognized by Acrobat. If your document is a scan of a printed page, Acrobat will not see the words unless Optical Character Recognition (OCR) is performed. The OCR process is rarely perfect and often results in errors. But I have used GridRipper successfully when OCR is high quality.<br>\u2003<p><b><u>About Michael Levy</u>:</b><p>\u2003\u2003Mr. Levy is an employment lawyer in the San Francisco Bay Area/East Bay.  He represents employees against abusive employers in claims for unpaid or underpaid wages, harassment, discrimination, wrongful termination, and other workplace grievances.  For questions or technical support, contact michael@levycivilrights.com.  Please include GridRipper in the subject line of your email.<p>\u2003<p>\u2003<p>\u2003</html>";
    
    private static final String _RETURN = "Return";
    
@@ -0,0 +1,46 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * a JDK Flight Recorder event for the loading (and parsing of the cross
+ * reference table) of a PDF by PDFBox. The file number of this and the other
+ * GridRipper events is the number of the PDF in the run (the first PDF is 1),
+ * as in the file_number column; the page is the page of the PDF counting from
+ * 1, as written in the pdf_page column (which is one more than
+ * GridRipperController.getPdfPage(), as that counts from 0).
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+@Name("GridRipper.Load")
+@Label("Load PDF")
+@Category("GridRipper")
+@Description("PDFBox loading a PDF")
+class GridRipperLoadEvent extends Event
+{
+   @Label("File Number")
+   int fileNumber;
+   
+   @Label("Path")
+   String path;
+   
+   @Label("Pages")
+   int pages;
+}
@@ -0,0 +1,191 @@
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.pdfbox.io.RandomAccessRead;
+
+/**
+ * lets PDFBox read a file that is mapped into memory. A mapping can be at most
+ * 2 GB, so the file is mapped in regions of _REGION_SIZE bytes, and reads that
+ * cross from one region to the next are split.
+ * 
+ * Each copy of a PDF that is loaded gets its own GridRipperMappedRead, so the
+ * positions of the mapped regions are not shared between threads.
+ * 
+ * The file is closed as soon as it is mapped (the mapping stays valid). The
+ * mapping itself is let go when this object is garbage collected, since Java
+ * has no way to unmap it sooner.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+class GridRipperMappedRead implements RandomAccessRead
+{
+   GridRipperMappedRead(final File f) throws IOException
+   {
+      final RandomAccessFile file = new RandomAccessFile(f, "r");
+      try
+      {
+         final FileChannel channel = file.getChannel();
+         length = channel.size();
+         regions = new MappedByteBuffer[(int) ((length + _REGION_SIZE - 1) / _REGION_SIZE)];
+         for(int i = 0; i < regions.length; i++)
+         {
+            final long start = (long) i * _REGION_SIZE;
+            regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(_REGION_SIZE, length - start));
+         }
+      }
+      finally
+      {
+         file.close();
+      }
+   }
+   
+   public int read() throws IOException
+   {
+      checkClosed();
+      if(position >= length)
+      {
+         return -1;
+      }
+      final int b = regions[(int) (position / _REGION_SIZE)].get((int) (position % _REGION_SIZE)) & 0xFF;
+      position++;
+      return b;
+   }
+   
+   public int read(final byte[] b) throws IOException
+   {
+      return read(b, 0, b.length);
+   }
+   
+   public int read(final byte[] b, final int offset, final int len) throws IOException
+   {
+      checkClosed();
+      if(len == 0)
+      {
+         return 0;
+      }
+      if(position >= length)
+      {
+         return -1;
+      }
+      final int n = (int) Math.min(len, length - position);
+      int done = 0;
+      while(done < n)
+      {
+         final MappedByteBuffer region = regions[(int) (position / _REGION_SIZE)];
+         final int at = (int) (position % _REGION_SIZE);
+         final int count = Math.min(n - done, region.capacity() - at);
+         region.position(at);
+         region.get(b, offset + done, count);
+         done += count;
+         position += count;
+      }
+      return n;
+   }
+   
+   public long getPosition() throws IOException
+   {
+      checkClosed();
+      return position;
+   }
+   
+   public void seek(final long p) throws IOException
+   {
+      checkClosed();
+      if(p < 0)
+      {
+         throw new IOException("Invalid position " + p);
+      }
+      position = Math.min(p, length);
+   }
+   
+   public long length() throws IOException
+   {
+      checkClosed();
+      return length;
+   }
+   
+   public boolean isClosed()
+   {
+      return regions == null;
+   }
+   
+   public int peek() throws IOException
+   {
+      final int b = read();
+      if(b != -1)
+      {
+         position--;
+      }
+      return b;
+   }
+   
+   public void rewind(final int bytes) throws IOException
+   {
+      seek(position - bytes);
+   }
+   
+   public byte[] readFully(final int len) throws IOException
+   {
+      final byte[] b = new byte[len];
+      int done = 0;
+      while(done < len)
+      {
+         final int n = read(b, done, len - done);
+         if(n == -1)
+         {
+            throw new EOFException("Premature end of file");
+         }
+         done += n;
+      }
+      return b;
+   }
+   
+   public boolean isEOF() throws IOException
+   {
+      return peek() == -1;
+   }
+   
+   public int available() throws IOException
+   {
+      checkClosed();
+      return (int) Math.min(length - position, Integer.MAX_VALUE);
+   }
+   
+   public void close()
+   {
+      regions = null;
+   }
+   
+   private void checkClosed() throws IOException
+   {
+      if(regions == null)
+      {
+         throw new IOException("The file is closed");
+      }
+   }
+   
+   private MappedByteBuffer[] regions;
+   private final long length;
+   private long position = 0;
+   
+   private static final long _REGION_SIZE = 1L << 30;
+}
@@ -0,0 +1,284 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * counts what GridRipper is doing, so that a slow job can be diagnosed while it
+ * runs: whether the time is going to PDFBox, to sorting the pages, to encoding
+ * the output, or to waiting for the disk. There is one set of metrics for the
+ * JVM (see get), which is registered as an MBean (see GridRipperMetricsMBean).
+ * 
+ * The counters are updated by every thread that rips or writes, so they are
+ * LongAdders, which do not lock and do not contend. Only the timing of each PDF
+ * (once per PDF, not per page or row) is synchronized.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+class GridRipperMetrics implements GridRipperMetricsMBean
+{
+   private GridRipperMetrics()
+   {
+      // use get().
+   }
+   
+   /**
+    * @return the metrics of this JVM
+    */
+   static GridRipperMetrics get()
+   {
+      return _METRICS;
+   }
+   
+   /**
+    * called by the controller when a run starts
+    */
+   synchronized void startRun(final int pdfs)
+   {
+      pdfsInRun = pdfs;
+      pagesAtStart = pages.sum();
+      rowsAtStart = rows.sum();
+      slowestPdf = null;
+      slowestPdfNanos = 0;
+      runStart = System.nanoTime();
+      running = true;
+   }
+   
+   /**
+    * called by the controller when a run is done (or is stopped)
+    */
+   synchronized void endRun()
+   {
+      runEnd = System.nanoTime();
+      running = false;
+   }
+   
+   void pdfCompleted()
+   {
+      pdfsCompleted.increment();
+   }
+   
+   void pageRead()
+   {
+      pages.increment();
+   }
+   
+   void glyphsRead(final int n)
+   {
+      glyphs.add(n);
+   }
+   
+   void rowsWritten(final int n)
+   {
+      rows.add(n);
+   }
+   
+   void bytesWritten(final long n)
+   {
+      bytes.add(n);
+   }
+   
+   void parsed(final long nanos)
+   {
+      parseNanos.add(nanos);
+   }
+   
+   void sorted(final long nanos)
+   {
+      sortNanos.add(nanos);
+   }
+   
+   void written(final long nanos)
+   {
+      writeNanos.add(nanos);
+   }
+   
+   void writeStalled(final long nanos)
+   {
+      stallNanos.add(nanos);
+   }
+   
+   /**
+    * @param path
+    *           the logical path of a PDF (or of part of one, when it is split
+    *           into ranges of pages)
+    * @param nanos
+    *           how long it took to rip
+    */
+   synchronized void pdfRipped(final String path, final long nanos)
+   {
+      lastPdf = path;
+      lastPdfNanos = nanos;
+      if(slowestPdf == null || nanos > slowestPdfNanos)
+      {
+         slowestPdf = path;
+         slowestPdfNanos = nanos;
+      }
+   }
+   
+   public synchronized boolean isRunning()
+   {
+      return running;
+   }
+   
+   public synchronized int getPdfsInRun()
+   {
+      return pdfsInRun;
+   }
+   
+   public long getPdfsCompleted()
+   {
+      return pdfsCompleted.sum();
+   }
+   
+   public long getPagesRead()
+   {
+      return pages.sum();
+   }
+   
+   public long getRowsWritten()
+   {
+      return rows.sum();
+   }
+   
+   public long getGlyphsRead()
+   {
+      return glyphs.sum();
+   }
+   
+   public long getBytesWritten()
+   {
+      return bytes.sum();
+   }
+   
+   public long getParseMillis()
+   {
+      return parseNanos.sum() / _NANOS_PER_MILLI;
+   }
+   
+   public long getSortMillis()
+   {
+      return sortNanos.sum() / _NANOS_PER_MILLI;
+   }
+   
+   public long getWriteMillis()
+   {
+      return writeNanos.sum() / _NANOS_PER_MILLI;
+   }
+   
+   public long getWriteStallMillis()
+   {
+      return stallNanos.sum() / _NANOS_PER_MILLI;
+   }
+   
+   public synchronized long getRunMillis()
+   {
+      return getRunNanos() / _NANOS_PER_MILLI;
+   }
+   
+   public synchronized double getPagesPerSecond()
+   {
+      return perSecond(pages.sum() - pagesAtStart);
+   }
+   
+   public synchronized double getRowsPerSecond()
+   {
+      return perSecond(rows.sum() - rowsAtStart);
+   }
+   
+   public synchronized String getLastPdf()
+   {
+      return lastPdf;
+   }
+   
+   public synchronized long getLastPdfMillis()
+   {
+      return lastPdfNanos / _NANOS_PER_MILLI;
+   }
+   
+   public synchronized String getSlowestPdf()
+   {
+      return slowestPdf;
+   }
+   
+   public synchronized long getSlowestPdfMillis()
+   {
+      return slowestPdfNanos / _NANOS_PER_MILLI;
+   }
+   
+   private long getRunNanos()
+   {
+      if(runStart == 0)
+      {
+         return 0;
+      }
+      return (running ? System.nanoTime() : runEnd) - runStart;
+   }
+   
+   private double perSecond(final long count)
+   {
+      final long nanos = getRunNanos();
+      return nanos == 0 ? 0 : count * 1e9 / nanos;
+   }
+   
+   private static GridRipperMetrics register()
+   {
+      final GridRipperMetrics metrics = new GridRipperMetrics();
+      try
+      {
+         ManagementFactory.getPlatformMBeanServer().registerMBean(
+               new StandardMBean(metrics, GridRipperMetricsMBean.class), new ObjectName(_OBJECT_NAME));
+      }
+      catch(final JMException jmx)
+      {
+         // the metrics are still kept; they just cannot be seen over JMX.
+         jmx.printStackTrace();
+      }
+      return metrics;
+   }
+   
+   private final LongAdder pdfsCompleted = new LongAdder();
+   private final LongAdder pages = new LongAdder();
+   private final LongAdder glyphs = new LongAdder();
+   private final LongAdder rows = new LongAdder();
+   private final LongAdder bytes = new LongAdder();
+   private final LongAdder parseNanos = new LongAdder();
+   private final LongAdder sortNanos = new LongAdder();
+   private final LongAdder writeNanos = new LongAdder();
+   private final LongAdder stallNanos = new LongAdder();
+   
+   /**
+    * the current (or last) run; these are guarded by this object's lock
+    */
+   private boolean running = false;
+   private int pdfsInRun = 0;
+   private long runStart = 0;
+   private long runEnd = 0;
+   private long pagesAtStart = 0;
+   private long rowsAtStart = 0;
+   private String lastPdf = null;
+   private long lastPdfNanos = 0;
+   private String slowestPdf = null;
+   private long slowestPdfNanos = 0;
+   
+   static final String _OBJECT_NAME = "GridRipper:type=Metrics";
+   private static final long _NANOS_PER_MILLI = 1000000;
+   private static final GridRipperMetrics _METRICS = register();
+}
@@ -0,0 +1,111 @@
+/**
+ * the management interface of GridRipperMetrics, which is registered with the
+ * platform MBean server as GridRipper:type=Metrics, so that a running job can
+ * be watched with jconsole or any JMX monitoring tool.
+ * 
+ * The counts and times are totals since the JVM started (so a monitoring tool
+ * can work out its own rates); the rates and the run time are for the current
+ * (or last) run.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+public interface GridRipperMetricsMBean
+{
+   /**
+    * @return true while a run is in progress
+    */
+   public boolean isRunning();
+   
+   /**
+    * @return the number of PDFs in the current (or last) run
+    */
+   public int getPdfsInRun();
+   
+   /**
+    * @return the number of PDFs that have been written (with or without
+    *         errors)
+    */
+   public long getPdfsCompleted();
+   
+   public long getPagesRead();
+   
+   public long getRowsWritten();
+   
+   /**
+    * @return the number of TextPositions (usually one per character) that
+    *         PDFBox has passed to the reader
+    */
+   public long getGlyphsRead();
+   
+   /**
+    * @return the number of bytes written to output files
+    */
+   public long getBytesWritten();
+   
+   /**
+    * @return the time spent by PDFBox loading and parsing PDFs, in
+    *         milliseconds (summed over all threads)
+    */
+   public long getParseMillis();
+   
+   /**
+    * @return the time spent sorting pages and grouping their lines
+    *         (GridRipperPage.finish), in milliseconds
+    */
+   public long getSortMillis();
+   
+   /**
+    * @return the time spent encoding rows for the writer, in milliseconds
+    *         (this includes getWriteStallMillis)
+    */
+   public long getWriteMillis();
+   
+   /**
+    * @return the time spent waiting for output files to be written to the
+    *         disk, in milliseconds
+    */
+   public long getWriteStallMillis();
+   
+   /**
+    * @return the time since the current run started (or the length of the
+    *         last run), in milliseconds
+    */
+   public long getRunMillis();
+   
+   public double getPagesPerSecond();
+   
+   public double getRowsPerSecond();
+   
+   /**
+    * @return the PDF that was ripped last
+    */
+   public String getLastPdf();
+   
+   /**
+    * @return the time it took to rip the PDF that was ripped last, in
+    *         milliseconds
+    */
+   public long getLastPdfMillis();
+   
+   /**
+    * @return the PDF that took the longest to rip in the current (or last) run
+    */
+   public String getSlowestPdf();
+   
+   public long getSlowestPdfMillis();
+}
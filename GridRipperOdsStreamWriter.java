@@ -1,13 +1,10 @@
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.zip.Deflater;
 
 /**
  * 
@@ -28,11 +25,27 @@ import java.util.zip.ZipOutputStream;
  * @author Michael
  *
  */
-class GridRipperOdsStreamWriter implements GridRipperWriter
+class GridRipperOdsStreamWriter implements GridRipperPageWriter
 {
    GridRipperOdsStreamWriter(final File target)
+   {
+      this(target, Deflater.DEFAULT_COMPRESSION, Runtime.getRuntime().availableProcessors());
+   }
+   
+   /**
+    * @param target
+    *           the .ods file to create
+    * @param level
+    *           the compression level, from 0 (none, fastest) to 9 (smallest
+    *           file, slowest), or Deflater.DEFAULT_COMPRESSION
+    * @param threads
+    *           the number of threads that compress the content of the file
+    */
+   GridRipperOdsStreamWriter(final File target, final int level, final int threads)
    {
       this.target = target;
+      this.level = level;
+      this.threads = threads;
    }
    
    public void open(GridRipperController c)
@@ -40,43 +53,45 @@ class GridRipperOdsStreamWriter implements GridRipperWriter
       runStatus = GridRipperWriter._RUN_STATUS_RUNNING;
       controller = c;
       c.odsStreamPrintPermissions();
-      ZipOutputStream zos = null;
+      GridRipperZipOutputStream zos = null;
       try
       {
-         zos = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(target)));
+         file = new GridRipperAsyncFileOutput(target);
+         zos = new GridRipperZipOutputStream(file, level, threads);
          out = zos;
+         buffer = new GridRipperOutputBuffer(zos);
          
-         zos.putNextEntry(new ZipEntry("Configurations2/accelerator/"));
-         zos.putNextEntry(new ZipEntry("Configurations2/floater/"));
-         zos.putNextEntry(new ZipEntry("Configurations2/images/"));
-         zos.putNextEntry(new ZipEntry("Configurations2/menubar/"));
-         zos.putNextEntry(new ZipEntry("Configurations2/popupmenu/"));
-         zos.putNextEntry(new ZipEntry("Configurations2/progressbar/"));
-         zos.putNextEntry(new ZipEntry("Configurations2/statusbar/"));
-         zos.putNextEntry(new ZipEntry("Configurations2/toolbar/"));
-         zos.putNextEntry(new ZipEntry("Configurations2/toolpanel/"));
-         zos.putNextEntry(new ZipEntry("META-INF/manifest.xml"));
+         zos.putNextEntry("Configurations2/accelerator/");
+         zos.putNextEntry("Configurations2/floater/");
+         zos.putNextEntry("Configurations2/images/");
+         zos.putNextEntry("Configurations2/menubar/");
+         zos.putNextEntry("Configurations2/popupmenu/");
+         zos.putNextEntry("Configurations2/progressbar/");
+         zos.putNextEntry("Configurations2/statusbar/");
+         zos.putNextEntry("Configurations2/toolbar/");
+         zos.putNextEntry("Configurations2/toolpanel/");
+         zos.putNextEntry("META-INF/manifest.xml");
          resourceToZip("/ods/manifest.xml");
-         zos.closeEntry();
-         zos.putNextEntry(new ZipEntry("manifest.rdf"));
+         closeEntry();
+         zos.putNextEntry("manifest.rdf");
          resourceToZip("/ods/manifest.rdf");
-         zos.closeEntry();
-         zos.putNextEntry(new ZipEntry("meta.xml"));
+         closeEntry();
+         zos.putNextEntry("meta.xml");
          resourceToZip("/ods/meta.xml");
-         zos.closeEntry();
-         zos.putNextEntry(new ZipEntry("mimetype"));
+         closeEntry();
+         zos.putNextEntry("mimetype");
          resourceToZip("/ods/mimetype");
-         zos.closeEntry();
-         zos.putNextEntry(new ZipEntry("settings.xml"));
+         closeEntry();
+         zos.putNextEntry("settings.xml");
          resourceToZip("/ods/settings.xml");
-         zos.closeEntry();
-         zos.putNextEntry(new ZipEntry("styles.xml"));
+         closeEntry();
+         zos.putNextEntry("styles.xml");
          resourceToZip("/ods/styles.xml");
-         zos.closeEntry();
-         zos.putNextEntry(new ZipEntry("Thumbnails/thumbnail.png"));
+         closeEntry();
+         zos.putNextEntry("Thumbnails/thumbnail.png");
          resourceToZip("/ods/thumbnail.png");
-         zos.closeEntry();
-         zos.putNextEntry(new ZipEntry("content.xml"));
+         closeEntry();
+         zos.putNextEntry("content.xml");
          resourceToZip("/ods/content-heading.txt");
          newSheet();
       }
@@ -86,6 +101,15 @@ class GridRipperOdsStreamWriter implements GridRipperWriter
       }
    }
    
+   /**
+    * write out what is left of the current zip entry and close it
+    */
+   private void closeEntry() throws IOException
+   {
+      buffer.drain();
+      out.closeEntry();
+   }
+   
    private void resourceToZip(final String resource) throws IOException
    {
       if(errorStatus == GridRipperWriter._ERROR_STATUS_CRASH)
@@ -96,13 +120,13 @@ class GridRipperOdsStreamWriter implements GridRipperWriter
       while(is.available() > _BYTE_ARRAY_LENGTH)
       {
          is.read(b);
-         out.write(b);
+         buffer.write(b);
       }
       final int av = is.available();
       if(av > 0)
       {
          is.read(b, 0, av);
-         out.write(b, 0, av);
+         buffer.write(b, 0, av);
       }
       is.close();
    }
@@ -124,10 +148,10 @@ class GridRipperOdsStreamWriter implements GridRipperWriter
       {
          if(sheetCount != 0)
          {
-            out.write(_CONTENT_SHEET_END, 0, _CONTENT_SHEET_END.length);
+            buffer.write(_CONTENT_SHEET_END);
          }
-         out.write(_CONTENT_SHEET_START, 0, _CONTENT_SHEET_START.length);
-         out.write(s.substring(s.length() - namelen).getBytes(), 0, namelen);
+         buffer.write(_CONTENT_SHEET_START);
+         buffer.write(s.substring(s.length() - namelen).getBytes(), 0, namelen);
          resourceToZip("/ods/content-newsheet.txt");
          
          if(sheetCount != 0)
@@ -164,31 +188,24 @@ class GridRipperOdsStreamWriter implements GridRipperWriter
       {
          return;
       }
-      
-      builder.delete(0, builder.length());
-      for(int i = 0; i < s.length(); i++)
+      try
       {
-         boolean flag = true;
-         final char c = s.charAt(i);
-         
-         for(int j = 0; j < 5; j++)
-         {
-            if(c == _REPLACEES[j])
-            {
-               builder.append(_REPLACERS[j]);
-               flag = false;
-               break;
-            }
-         }
-         if(flag)
-         {
-            builder.append(c < 32 || Character.isWhitespace(c) ? ' ' : c);
-         }
+         buffer.write(_CONTENT_STRING_BEFORE);
+         buffer.writeXml(s);
+         buffer.write(_CONTENT_STRING_AFTER);
+      }
+      catch(final IOException iex)
+      {
+         iex.printStackTrace();
+         errorStatus = GridRipperWriter._ERROR_STATUS_CRASH;
       }
-      write(_CONTENT_STRING_BEFORE);
-      write(builder.toString());
-      write(_CONTENT_STRING_AFTER);
-      builder.delete(0, builder.length());
+   }
+   
+   private void writeText(final char[] chars, final int start, final int length) throws IOException
+   {
+      buffer.write(_CONTENT_STRING_BEFORE);
+      buffer.writeXml(chars, start, length);
+      buffer.write(_CONTENT_STRING_AFTER);
    }
    
    public void writeInt(int i)
@@ -197,12 +214,15 @@ class GridRipperOdsStreamWriter implements GridRipperWriter
       {
          return;
       }
-      final byte[] b = Integer.toString(i).getBytes(_UTF8);
-      write(_CONTENT_NUMBER_BEFORE);
-      write(b);
-      write(_CONTENT_NUMBER_MIDDLE);
-      write(b);
-      write(_CONTENT_NUMBER_AFTER);
+      try
+      {
+         writeNumber(i);
+      }
+      catch(final IOException iex)
+      {
+         iex.printStackTrace();
+         errorStatus = GridRipperWriter._ERROR_STATUS_CRASH;
+      }
    }
    
    public void writeFloat(float f)
@@ -211,11 +231,37 @@ class GridRipperOdsStreamWriter implements GridRipperWriter
       {
          return;
       }
-      write(_CONTENT_NUMBER_BEFORE);
-      write(Float.toString(f));
-      write(_CONTENT_NUMBER_MIDDLE);
-      write(String.format("%.2f", f));
-      write(_CONTENT_NUMBER_AFTER);
+      try
+      {
+         writeNumber(f);
+      }
+      catch(final IOException iex)
+      {
+         iex.printStackTrace();
+         errorStatus = GridRipperWriter._ERROR_STATUS_CRASH;
+      }
+   }
+   
+   private void writeNumber(final int i) throws IOException
+   {
+      buffer.write(_CONTENT_NUMBER_BEFORE);
+      buffer.writeInt(i);
+      buffer.write(_CONTENT_NUMBER_MIDDLE);
+      buffer.writeInt(i);
+      buffer.write(_CONTENT_NUMBER_AFTER);
+   }
+   
+   /**
+    * the value is the float as Float.toString writes it, and the text that is
+    * displayed is the float rounded to 2 decimal places
+    */
+   private void writeNumber(final float f) throws IOException
+   {
+      buffer.write(_CONTENT_NUMBER_BEFORE);
+      buffer.writeFloat(f);
+      buffer.write(_CONTENT_NUMBER_MIDDLE);
+      buffer.writeFixed(f, 2);
+      buffer.write(_CONTENT_NUMBER_AFTER);
    }
    
    public void writeDate(long d)
@@ -235,6 +281,82 @@ class GridRipperOdsStreamWriter implements GridRipperWriter
       write(_CONTENT_DATE_AFTER);
    }
    
+   public void writePage(final GridRipperPage page, final int[] columns, final GridRipperController c,
+         final int firstId)
+   {
+      if(errorStatus == GridRipperWriter._ERROR_STATUS_CRASH)
+      {
+         return;
+      }
+      final int fileNumber = c.getFileNumber();
+      final String filePath = c.getFilePath();
+      final String fileName = c.getFileName();
+      final int pdfPage = c.getPdfPage() + 1;
+      final int totalPage = c.getPid() + 1;
+      final char[] chars = page.getChars();
+      try
+      {
+         for(int j = 0; j < page.size(); j++)
+         {
+            final int r = page.getRow(j);
+            buffer.write(_CONTENT_ROW_START);
+            for(final int column : columns)
+            {
+               switch(column)
+               {
+                  case _COLUMN_ROW_ID:
+                     writeNumber(firstId + j);
+                     break;
+                  case _COLUMN_FILE_NUMBER:
+                     writeNumber(fileNumber);
+                     break;
+                  case _COLUMN_FILE_PATH:
+                     writeText(filePath);
+                     break;
+                  case _COLUMN_FILE_NAME:
+                     writeText(fileName);
+                     break;
+                  case _COLUMN_PDF_PAGE:
+                     writeNumber(pdfPage);
+                     break;
+                  case _COLUMN_TOTAL_PAGE:
+                     writeNumber(totalPage);
+                     break;
+                  case _COLUMN_Y_START:
+                     writeNumber(page.getYStart(r));
+                     break;
+                  case _COLUMN_Y_SMOOTH:
+                     writeNumber(page.getYSmooth(r));
+                     break;
+                  case _COLUMN_X_START:
+                     writeNumber(page.getXStart(r));
+                     break;
+                  case _COLUMN_X_END:
+                     writeNumber(page.getXEnd(r));
+                     break;
+                  case _COLUMN_FONT_SIZE:
+                     writeNumber(page.getFontSize(r));
+                     break;
+                  case _COLUMN_ROTATION:
+                     writeNumber(page.getRotation(r));
+                     break;
+                  case _COLUMN_CONTENT:
+                     writeText(chars, page.getContentStart(r), page.getContentLength(r));
+                     break;
+                  default:
+                     break;
+               }
+            }
+            buffer.write(_CONTENT_ROW_END);
+         }
+      }
+      catch(final IOException iex)
+      {
+         iex.printStackTrace();
+         errorStatus = GridRipperWriter._ERROR_STATUS_CRASH;
+      }
+   }
+   
    public void startRow()
    {
       write(_CONTENT_ROW_START);
@@ -279,25 +401,55 @@ class GridRipperOdsStreamWriter implements GridRipperWriter
       // no action is required.
    }
    
+   /**
+    * finish the .ods file. After a crash, the file is left incomplete, but the
+    * compression threads and the file's writer thread are still stopped, and
+    * the file is still closed.
+    */
    public void close()
    {
-      if(errorStatus == GridRipperWriter._ERROR_STATUS_CRASH)
+      try
+      {
+         if(errorStatus != GridRipperWriter._ERROR_STATUS_CRASH)
+         {
+            buffer.write(_CONTENT_SHEET_END);
+            buffer.write(_CONTENT_END);
+            closeEntry();
+            out.close();
+         }
+      }
+      catch(final IOException iox)
+      {
+         iox.printStackTrace();
+         errorStatus = GridRipperWriter._ERROR_STATUS_CRASH;
+      }
+      finally
       {
+         abort();
          runStatus = GridRipperWriter._RUN_STATUS_DONE;
-         return;
       }
+   }
+   
+   /**
+    * release the zip stream and the file, if they have not been closed
+    */
+   private void abort()
+   {
       try
       {
-         out.write(_CONTENT_SHEET_END, 0, _CONTENT_SHEET_END.length);
-         out.write(_CONTENT_END, 0, _CONTENT_END.length);
-         out.closeEntry();
-         out.close();
+         if(out != null)
+         {
+            out.abort();
+         }
+         else if(file != null)
+         {
+            file.close();
+         }
       }
       catch(final IOException iox)
       {
-         errorStatus = GridRipperWriter._ERROR_STATUS_CRASH;
+         iox.printStackTrace();
       }
-      runStatus = GridRipperWriter._RUN_STATUS_DONE;
    }
    
    public int getRunStatus()
@@ -331,7 +483,7 @@ class GridRipperOdsStreamWriter implements GridRipperWriter
       }
       try
       {
-         out.write(toWrite, 0, toWrite.length);
+         buffer.write(toWrite);
       }
       catch(final IOException iex)
       {
@@ -346,10 +498,16 @@ class GridRipperOdsStreamWriter implements GridRipperWriter
    }
    
    private final File target;
-   private ZipOutputStream out = null;
+   private final int level;
+   private final int threads;
+   private GridRipperZipOutputStream out = null;
+   /**
+    * the file, which is written on a background thread
+    */
+   private GridRipperAsyncFileOutput file = null;
+   private GridRipperOutputBuffer buffer = null;
    private final byte[] b = new byte[_BYTE_ARRAY_LENGTH];
    private static final int _BYTE_ARRAY_LENGTH = 256;
-   private final StringBuilder builder = new StringBuilder(999);
    
    private GridRipperController controller = null;
    private int runStatus = GridRipperWriter._RUN_STATUS_NOT_STARTED;
@@ -386,9 +544,6 @@ class GridRipperOdsStreamWriter implements GridRipperWriter
    
    private static final byte[] _CONTENT_BLANK = "<table:table-cell/>".getBytes(_UTF8);
    
-   private static final char[] _REPLACEES = { '\"', '\'', '&', '<', '>' };
-   private static final String[] _REPLACERS = { "&quot;", "&apos;", "&amp;", "&lt;", "&gt;" };
-   
    private static final SimpleDateFormat _SDF_DATE = new SimpleDateFormat("yyyy-MM-dd");
    private static final SimpleDateFormat _SDF_TIME = new SimpleDateFormat("HH:mm:ss");
 }
@@ -0,0 +1,490 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * a reusable byte buffer in front of an OutputStream, for writers that encode
+ * their output themselves. Text is encoded as UTF-8, and ints and floats are
+ * formatted straight into the buffer, so writing a cell does not create any
+ * Strings. The buffer is only written to the stream when it is full (or when
+ * it is flushed or closed).
+ * 
+ * Floats are written the way Float.toString writes them (the shortest decimal
+ * that reads back as the same float, e.g. 36.0 or 58.23999). Floats that
+ * Float.toString would write in scientific notation (below 0.001 or at least
+ * 10,000,000) are rare in a PDF, and are written by Float.toString.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+class GridRipperOutputBuffer
+{
+   GridRipperOutputBuffer(final OutputStream out)
+   {
+      this(out, _DEFAULT_CAPACITY);
+   }
+   
+   GridRipperOutputBuffer(final OutputStream out, final int capacity)
+   {
+      this.out = out;
+      buffer = new byte[capacity < _MIN_CAPACITY ? _MIN_CAPACITY : capacity];
+   }
+   
+   void write(final int b) throws IOException
+   {
+      if(count == buffer.length)
+      {
+         drain();
+      }
+      buffer[count++] = (byte) b;
+   }
+   
+   void write(final byte[] b) throws IOException
+   {
+      write(b, 0, b.length);
+   }
+   
+   void write(final byte[] b, final int offset, final int length) throws IOException
+   {
+      if(length > buffer.length - count)
+      {
+         drain();
+         if(length > buffer.length)
+         {
+            out.write(b, offset, length);
+            written += length;
+            return;
+         }
+      }
+      System.arraycopy(b, offset, buffer, count, length);
+      count += length;
+   }
+   
+   /**
+    * write the characters as UTF-8
+    */
+   void writeText(final String s) throws IOException
+   {
+      writeText(s, 0, s.length());
+   }
+   
+   /**
+    * write length characters of the String, starting at start, as UTF-8
+    */
+   void writeText(final String s, final int start, final int length) throws IOException
+   {
+      final int end = start + length;
+      for(int i = start; i < end; i++)
+      {
+         final char c = s.charAt(i);
+         if(c < 0x80)
+         {
+            write(c);
+         }
+         else if(Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1)))
+         {
+            writeCodePoint(Character.toCodePoint(c, s.charAt(++i)));
+         }
+         else
+         {
+            writeCodePoint(c);
+         }
+      }
+   }
+   
+   /**
+    * write length characters of the array, starting at start, as UTF-8
+    */
+   void writeText(final char[] chars, final int start, final int length) throws IOException
+   {
+      final int end = start + length;
+      for(int i = start; i < end; i++)
+      {
+         final char c = chars[i];
+         if(c < 0x80)
+         {
+            if(count == buffer.length)
+            {
+               drain();
+            }
+            buffer[count++] = (byte) c;
+         }
+         else if(Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(chars[i + 1]))
+         {
+            writeCodePoint(Character.toCodePoint(c, chars[++i]));
+         }
+         else
+         {
+            writeCodePoint(c);
+         }
+      }
+   }
+   
+   /**
+    * @return the number of bytes that writeText(chars, start, length) writes
+    */
+   static int utf8Length(final char[] chars, final int start, final int length)
+   {
+      final int end = start + length;
+      int n = 0;
+      for(int i = start; i < end; i++)
+      {
+         final char c = chars[i];
+         if(c < 0x80)
+         {
+            n++;
+         }
+         else if(c < 0x800)
+         {
+            n += 2;
+         }
+         else if(Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(chars[i + 1]))
+         {
+            n += 4;
+            i++;
+         }
+         else if(Character.isSurrogate(c))
+         {
+            n++;
+         }
+         else
+         {
+            n += 3;
+         }
+      }
+      return n;
+   }
+   
+   /**
+    * write the characters as UTF-8 XML text: the characters that are special in
+    * XML are written as entities, and whitespace and control characters (which
+    * XML does not allow) are written as spaces
+    */
+   void writeXml(final String s) throws IOException
+   {
+      final int length = s.length();
+      int run = 0;
+      for(int i = 0; i < length; i++)
+      {
+         final byte[] replacement = xmlReplacement(s.charAt(i));
+         if(replacement != null)
+         {
+            writeText(s, run, i - run);
+            write(replacement);
+            run = i + 1;
+         }
+      }
+      writeText(s, run, length - run);
+   }
+   
+   /**
+    * write length characters of the array, starting at start, as UTF-8 XML
+    * text (see writeXml(String))
+    */
+   void writeXml(final char[] chars, final int start, final int length) throws IOException
+   {
+      final int end = start + length;
+      int run = start;
+      for(int i = start; i < end; i++)
+      {
+         final byte[] replacement = xmlReplacement(chars[i]);
+         if(replacement != null)
+         {
+            writeText(chars, run, i - run);
+            write(replacement);
+            run = i + 1;
+         }
+      }
+      writeText(chars, run, end - run);
+   }
+   
+   /**
+    * @return what to write instead of the character (an XML entity, or a space
+    *         instead of whitespace and control characters), or null if the
+    *         character can be written as it is
+    */
+   private static byte[] xmlReplacement(final char c)
+   {
+      if(c < 128)
+      {
+         return _XML_REPLACEMENTS[c];
+      }
+      return Character.isWhitespace(c) ? _SPACE : null;
+   }
+   
+   /**
+    * write a single (non-ASCII) character as UTF-8; a surrogate that is not
+    * part of a pair is written as '?', as the String encoder does.
+    */
+   private void writeCodePoint(final int cp) throws IOException
+   {
+      if(buffer.length - count < 4)
+      {
+         drain();
+      }
+      if(cp < 0x80)
+      {
+         buffer[count++] = (byte) cp;
+      }
+      else if(cp < 0x800)
+      {
+         buffer[count++] = (byte) (0xC0 | (cp >> 6));
+         buffer[count++] = (byte) (0x80 | (cp & 0x3F));
+      }
+      else if(cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE)
+      {
+         buffer[count++] = '?';
+      }
+      else if(cp < 0x10000)
+      {
+         buffer[count++] = (byte) (0xE0 | (cp >> 12));
+         buffer[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+         buffer[count++] = (byte) (0x80 | (cp & 0x3F));
+      }
+      else
+      {
+         buffer[count++] = (byte) (0xF0 | (cp >> 18));
+         buffer[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+         buffer[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+         buffer[count++] = (byte) (0x80 | (cp & 0x3F));
+      }
+   }
+   
+   /**
+    * write the integer in decimal, the same as Integer.toString
+    */
+   void writeInt(final int i) throws IOException
+   {
+      writeLong(i);
+   }
+   
+   /**
+    * write the long in decimal, the same as Long.toString
+    */
+   void writeLong(final long l) throws IOException
+   {
+      if(buffer.length - count < 20)
+      {
+         drain();
+      }
+      if(l == Long.MIN_VALUE)
+      {
+         write(_LONG_MIN_VALUE);
+         return;
+      }
+      long v = l;
+      if(v < 0)
+      {
+         buffer[count++] = '-';
+         v = -v;
+      }
+      final int digits = digits(v);
+      int p = count + digits;
+      count = p;
+      do
+      {
+         buffer[--p] = (byte) ('0' + (int) (v % 10));
+         v /= 10;
+      }
+      while(v != 0);
+   }
+   
+   /**
+    * write the float the same way as Float.toString
+    */
+   void writeFloat(final float f) throws IOException
+   {
+      final float a = Math.abs(f);
+      if(a == 0.0f)
+      {
+         write(Float.floatToRawIntBits(f) < 0 ? _NEGATIVE_ZERO : _ZERO);
+         return;
+      }
+      if(a >= 1e-3f && a < 1e7f)
+      {
+         // the smallest number of digits after the decimal point that reads
+         // back as the same float. Because a float has only 24 bits, a * 10^d
+         // (as a double) is exact for d <= 12, and so is rounding it.
+         final double lower = ((double) a + Math.nextDown(a)) / 2;
+         final double upper = ((double) a + Math.nextUp(a)) / 2;
+         for(int d = 1; d < _POWERS_OF_TEN.length; d++)
+         {
+            final double scaled = Math.rint(a * _POWERS_OF_TEN[d]);
+            final double q = scaled / _POWERS_OF_TEN[d];
+            if(q == lower || q == upper)
+            {
+               // too close to call; leave it to Float.toString.
+               break;
+            }
+            if(q > lower && q < upper)
+            {
+               if(buffer.length - count < 32)
+               {
+                  drain();
+               }
+               if(f < 0)
+               {
+                  buffer[count++] = '-';
+               }
+               writeDecimal((long) scaled, d);
+               return;
+            }
+         }
+      }
+      writeText(Float.toString(f));
+   }
+   
+   /**
+    * write the float rounded to a number of decimal places, the same as
+    * String.format("%.2f", f) (for 2 decimals) does in an English locale: the
+    * exact value of the float is rounded half up.
+    * 
+    * @param decimals
+    *           the number of digits after the decimal point, from 1 to 6
+    */
+   void writeFixed(final float f, final int decimals) throws IOException
+   {
+      final float a = Math.abs(f);
+      // a float times 10^6 is still exact as a double, and so is adding one
+      // half, as long as the result is less than 2^52.
+      if(!(a < 1e9f) || decimals < 1 || decimals > 6)
+      {
+         writeText(String.format(Locale.ENGLISH, "%." + decimals + "f", f));
+         return;
+      }
+      if(buffer.length - count < 32)
+      {
+         drain();
+      }
+      if(Float.floatToRawIntBits(f) < 0)
+      {
+         buffer[count++] = '-';
+      }
+      writeDecimal((long) Math.floor(a * _POWERS_OF_TEN[decimals] + 0.5), decimals);
+   }
+   
+   /**
+    * write m / 10^d, with exactly d digits after the decimal point
+    */
+   private void writeDecimal(final long m, final int d)
+   {
+      final long pow = (long) _POWERS_OF_TEN[d];
+      long fraction = m % pow;
+      long whole = m / pow;
+      
+      int p = count + digits(whole) + 1 + d;
+      count = p;
+      for(int k = 0; k < d; k++)
+      {
+         buffer[--p] = (byte) ('0' + (int) (fraction % 10));
+         fraction /= 10;
+      }
+      buffer[--p] = '.';
+      do
+      {
+         buffer[--p] = (byte) ('0' + (int) (whole % 10));
+         whole /= 10;
+      }
+      while(whole != 0);
+   }
+   
+   private static int digits(final long v)
+   {
+      int digits = 1;
+      long limit = 10;
+      while(digits < 19 && v >= limit)
+      {
+         digits++;
+         limit *= 10;
+      }
+      return digits;
+   }
+   
+   /**
+    * @return the number of bytes written so far (including those still in the
+    *         buffer)
+    */
+   long getBytesWritten()
+   {
+      return written + count;
+   }
+   
+   /**
+    * write the buffer to the stream, without flushing the stream
+    */
+   void drain() throws IOException
+   {
+      if(count > 0)
+      {
+         out.write(buffer, 0, count);
+         written += count;
+         count = 0;
+      }
+   }
+   
+   void flush() throws IOException
+   {
+      drain();
+      out.flush();
+   }
+   
+   void close() throws IOException
+   {
+      try
+      {
+         drain();
+      }
+      finally
+      {
+         out.close();
+      }
+   }
+   
+   private final OutputStream out;
+   private final byte[] buffer;
+   private int count = 0;
+   private long written = 0;
+   
+   private static final int _DEFAULT_CAPACITY = 65536;
+   private static final int _MIN_CAPACITY = 64;
+   
+   private static final double[] _POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+         1e12 };
+   private static final byte[] _SPACE = { ' ' };
+   
+   /**
+    * for each ASCII character, what to write instead of it in XML text, or null
+    */
+   private static final byte[][] _XML_REPLACEMENTS = new byte[128][];
+   static
+   {
+      for(int c = 0; c < 32; c++)
+      {
+         _XML_REPLACEMENTS[c] = _SPACE;
+      }
+      _XML_REPLACEMENTS['\"'] = new byte[] { '&', 'q', 'u', 'o', 't', ';' };
+      _XML_REPLACEMENTS['\''] = new byte[] { '&', 'a', 'p', 'o', 's', ';' };
+      _XML_REPLACEMENTS['&'] = new byte[] { '&', 'a', 'm', 'p', ';' };
+      _XML_REPLACEMENTS['<'] = new byte[] { '&', 'l', 't', ';' };
+      _XML_REPLACEMENTS['>'] = new byte[] { '&', 'g', 't', ';' };
+   }
+   
+   private static final byte[] _ZERO = { '0', '.', '0' };
+   private static final byte[] _NEGATIVE_ZERO = { '-', '0', '.', '0' };
+   private static final byte[] _LONG_MIN_VALUE = { '-', '9', '2', '2', '3', '3', '7', '2', '0', '3', '6', '8', '5',
+         '4', '7', '7', '5', '8', '0', '8' };
+}
@@ -1,7 +1,18 @@
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pdfbox.text.TextPosition;
 
 /**
+ * holds the entries (phrases/words/characters) of a single PDF page until the
+ * page is complete, then sorts them and sends them to the writer.
+ * 
+ * The entries are not held as objects: each column (y_start, y_smooth,
+ * x_start, x_end, font_size, rotation) is an array, and the content of every
+ * entry is held in a single char array, with an offset and a length for each
+ * entry. The arrays only grow, so a page that is reused for every page of a
+ * PDF stops allocating memory once it has seen the largest page.
+ * 
  * Copyright 2017-2018 Michael A. Levy
  * 
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
@@ -23,27 +34,361 @@ class GridRipperPage
 {
    GridRipperPage()
    {
-      rows = new ArrayList<GridRipperRow>(9999);
+      this(9999);
    }
    
-   void add(final GridRipperRow row)
+   /**
+    * @param capacity
+    *           the number of rows to presize the page for. A page that is
+    *           reused for every page of a PDF should be large; a page that is
+    *           held in memory until it can be written should be exactly the
+    *           right size.
+    */
+   GridRipperPage(final int capacity)
    {
-      rows.add(row);
+      final int c = capacity < 1 ? 1 : capacity;
+      yStart = new float[c];
+      ySmooth = new float[c];
+      xStart = new float[c];
+      xEnd = new float[c];
+      fontSize = new float[c];
+      rotation = new int[c];
+      contentStart = new int[c];
+      contentLength = new int[c];
+      order = new int[c];
+      chars = new char[c * 4];
    }
    
-   void writePage(final GridRipperController controller) throws IOException
+   /**
+    * add an entry
+    * 
+    * @param content
+    *           the text of the entry (it is copied into this page)
+    */
+   void add(final float yStart, final float xStart, final float xEnd, final float fontSize, final int rotation,
+         final String content)
+   {
+      final int i = startRow();
+      appendContent(content);
+      endRow(i, yStart, xStart, xEnd, fontSize, rotation);
+   }
+   
+   /**
+    * add a single character (or, more precisely, a single TextPosition) as an
+    * entry
+    */
+   void add(final TextPosition tp)
+   {
+      final int i = startRow();
+      appendContent(tp.getUnicode());
+      endRow(i, tp.getY(), tp.getX(), tp.getEndX(), tp.getFontSize(), (int) (tp.getDir() + 0.1f));
+   }
+   
+   /**
+    * add a phrase or word as an entry. The entry covers the TextPositions from
+    * index from (inclusive) to index to (exclusive), and takes its font size and
+    * rotation from the first one. Entries that are only whitespace are not
+    * added.
+    * 
+    * @param textPositions
+    *           the TextPositions of a string on the page; the phrase or word is
+    *           a range of them
+    */
+   void add(final List<TextPosition> textPositions, final int from, final int to)
    {
-      if(!rows.isEmpty())
+      float ys = Float.MAX_VALUE;
+      float xs = Float.MAX_VALUE;
+      float xe = Float.MIN_VALUE;
+      
+      final int i = startRow();
+      for(int k = from; k < to; k++)
       {
-         rows.sort(null);
-         rows.get(0).smooth(null);
-         for(int i = 1; i < rows.size(); i++)
+         final TextPosition tp = textPositions.get(k);
+         if(ys > tp.getY())
          {
-            rows.get(i).smooth(rows.get(i - 1));
+            ys = tp.getY();
          }
-         rows.sort(null);
+         if(xs > tp.getX())
+         {
+            xs = tp.getX();
+         }
+         if(xe < tp.getEndX())
+         {
+            xe = tp.getEndX();
+         }
+         appendContent(tp.getUnicode());
+      }
+      
+      if(isBlank(contentStart[i], charCount - contentStart[i]))
+      {
+         charCount = contentStart[i];
+         return;
+      }
+      final TextPosition first = textPositions.get(from);
+      endRow(i, ys, xs, xe, first.getFontSize(), (int) (first.getDir() + 0.1f));
+   }
+   
+   /**
+    * add an entry that has already been finished (sorted, and given its
+    * y_smooth), such as one read back from a GridRipperExtractionCache. Entries
+    * are added in the order they are written, and the page must not be
+    * finished again.
+    */
+   void addFinished(final float yStart, final float ySmooth, final float xStart, final float xEnd,
+         final float fontSize, final int rotation, final char[] content, final int start, final int length)
+   {
+      final int i = startRow();
+      appendContent(content, start, length);
+      endRow(i, yStart, xStart, xEnd, fontSize, rotation);
+      this.ySmooth[i] = ySmooth;
+      order[i] = i;
+   }
+   
+   /**
+    * @param j
+    *           the position of a row on the (finished) page
+    * @return the index of the entry that is written in that row, for the
+    *         getters below
+    */
+   int getRow(final int j)
+   {
+      return order[j];
+   }
+   
+   float getYStart(final int r)
+   {
+      return yStart[r];
+   }
+   
+   float getYSmooth(final int r)
+   {
+      return ySmooth[r];
+   }
+   
+   float getXStart(final int r)
+   {
+      return xStart[r];
+   }
+   
+   float getXEnd(final int r)
+   {
+      return xEnd[r];
+   }
+   
+   float getFontSize(final int r)
+   {
+      return fontSize[r];
+   }
+   
+   int getRotation(final int r)
+   {
+      return rotation[r];
+   }
+   
+   /**
+    * @return the array that holds the content of every entry; the content of
+    *         entry r is getContentLength(r) characters starting at
+    *         getContentStart(r). The array must not be changed.
+    */
+   char[] getChars()
+   {
+      return chars;
+   }
+   
+   int getContentStart(final int r)
+   {
+      return contentStart[r];
+   }
+   
+   int getContentLength(final int r)
+   {
+      return contentLength[r];
+   }
+   
+   /**
+    * @param fileNumber
+    *           the number of the PDF that this page is read from (the first PDF
+    *           is 1)
+    * @param pdfPage
+    *           the page of the PDF (the first page is 1)
+    */
+   void setOrigin(final int fileNumber, final int pdfPage)
+   {
+      this.fileNumber = fileNumber;
+      this.pdfPage = pdfPage;
+   }
+   
+   /**
+    * discard the rows on this page without writing them
+    */
+   void clear()
+   {
+      size = 0;
+      charCount = 0;
+   }
+   
+   /**
+    * @return the number of entries on this page
+    */
+   int size()
+   {
+      return size;
+   }
+   
+   /**
+    * @return a finished copy of this page, with arrays that are exactly the
+    *         right size, so that it can be held until it is written while this
+    *         page is reused.
+    */
+   GridRipperPage copy()
+   {
+      final GridRipperPage copy = new GridRipperPage(size);
+      copy.chars = new char[charCount];
+      for(int j = 0; j < size; j++)
+      {
+         final int i = order[j];
+         copy.yStart[j] = yStart[i];
+         copy.ySmooth[j] = ySmooth[i];
+         copy.xStart[j] = xStart[i];
+         copy.xEnd[j] = xEnd[i];
+         copy.fontSize[j] = fontSize[i];
+         copy.rotation[j] = rotation[i];
+         copy.contentStart[j] = copy.charCount;
+         copy.contentLength[j] = contentLength[i];
+         copy.order[j] = j;
+         System.arraycopy(chars, contentStart[i], copy.chars, copy.charCount, contentLength[i]);
+         copy.charCount += contentLength[i];
       }
+      copy.size = size;
+      return copy;
+   }
+   
+   /**
+    * sort and smooth the page, and then write it
+    */
+   void writePage(final GridRipperController controller) throws IOException
+   {
+      finish();
+      write(controller);
+   }
+   
+   /**
+    * @param tolerance
+    *           how far (down the page) an entry can be from the first entry of
+    *           a line and still be on that line
+    * @param relativeToFontSize
+    *           if true, the tolerance is a multiple of the font size of the
+    *           first entry of the line; if false, it is in points
+    * @param orderByX
+    *           if true, the entries of each line are ordered from left to
+    *           right; if false (the original order), they are ordered by
+    *           y_start and then from left to right
+    */
+   void setLineClustering(final float tolerance, final boolean relativeToFontSize, final boolean orderByX)
+   {
+      this.tolerance = tolerance;
+      this.relativeToFontSize = relativeToFontSize;
+      this.orderByX = orderByX;
+   }
+   
+   /**
+    * sort the rows and compute y_smooth. This does not depend on the
+    * controller, so it can be done by a worker thread before the page is
+    * handed over to be written.
+    * 
+    * The entries are sorted once, by y_start, and then grouped into lines in a
+    * single pass: an entry is on the same line as the first entry of the line
+    * (and gets that entry's y_start as its y_smooth) if it is less than the
+    * tolerance below it. Because y_smooth only ever increases in this order,
+    * the entries are already in the order they are written, and no second sort
+    * is needed (unless the lines are ordered by x, which only sorts within each
+    * line).
+    */
+   void finish()
+   {
+      if(size == 0)
+      {
+         return;
+      }
+      final GridRipperSortEvent event = new GridRipperSortEvent();
+      event.begin();
+      final long start = System.nanoTime();
+      for(int i = 0; i < size; i++)
+      {
+         order[i] = i;
+      }
+      sort(0, size, false);
       
+      int first = order[0];
+      int lineStart = 0;
+      float lineTolerance = lineTolerance(first);
+      ySmooth[first] = yStart[first];
+      for(int j = 1; j < size; j++)
+      {
+         final int i = order[j];
+         if(yStart[i] - yStart[first] < lineTolerance)
+         {
+            ySmooth[i] = yStart[first];
+         }
+         else
+         {
+            if(orderByX)
+            {
+               sort(lineStart, j, true);
+            }
+            first = i;
+            lineStart = j;
+            lineTolerance = lineTolerance(first);
+            ySmooth[first] = yStart[first];
+         }
+      }
+      if(orderByX)
+      {
+         sort(lineStart, size, true);
+      }
+      GridRipperMetrics.get().sorted(System.nanoTime() - start);
+      event.end();
+      if(event.shouldCommit())
+      {
+         event.fileNumber = fileNumber;
+         event.page = pdfPage;
+         event.rows = size;
+         event.commit();
+      }
+   }
+   
+   private float lineTolerance(final int first)
+   {
+      return relativeToFontSize ? tolerance * fontSize[first] : tolerance;
+   }
+   
+   /**
+    * send the (already finished) rows to the controller's writer, numbering
+    * them with the controller's current file, page and id counters.
+    */
+   void write(final GridRipperController controller) throws IOException
+   {
+      final GridRipperWriteEvent event = new GridRipperWriteEvent();
+      event.begin();
+      final long start = System.nanoTime();
+      final int rows = size;
+      writeRows(controller);
+      final GridRipperMetrics metrics = GridRipperMetrics.get();
+      metrics.written(System.nanoTime() - start);
+      metrics.rowsWritten(rows);
+      event.end();
+      if(event.shouldCommit())
+      {
+         event.fileNumber = controller.getFileNumber();
+         event.page = controller.getPdfPage() + 1;
+         event.rows = rows;
+         event.commit();
+      }
+      controller.pageWritten(rows);
+   }
+   
+   private void writeRows(final GridRipperController controller) throws IOException
+   {
       final GridRipperWriter out = controller.out;
       final int fileNumber = controller.getFileNumber();
       final String filePath = controller.getFilePath();
@@ -52,8 +397,17 @@ class GridRipperPage
       final int totalPage = controller.getPid();
       
       out.startPage();
-      for(final GridRipperRow r : rows)
+      if(out instanceof GridRipperPageWriter)
       {
+         final int firstId = controller.reserveIds(size);
+         ((GridRipperPageWriter) out).writePage(this, controller.getColumns(), controller, firstId);
+         clear();
+         out.endPage();
+         return;
+      }
+      for(int j = 0; j < size; j++)
+      {
+         final int r = order[j];
          out.startRow();
          
          if(controller.getPermission(0))
@@ -76,25 +430,245 @@ class GridRipperPage
          if(controller.getPermission(5))
             out.writeInt(totalPage + 1);
          if(controller.getPermission(6))
-            out.writeFloat(r.y_start);
+            out.writeFloat(yStart[r]);
          if(controller.getPermission(7))
-            out.writeFloat(r.y_smooth);
+            out.writeFloat(ySmooth[r]);
          if(controller.getPermission(8))
-            out.writeFloat(r.x_start);
+            out.writeFloat(xStart[r]);
          if(controller.getPermission(9))
-            out.writeFloat(r.x_end);
+            out.writeFloat(xEnd[r]);
          if(controller.getPermission(10))
-            out.writeFloat(r.font_size);
+            out.writeFloat(fontSize[r]);
          if(controller.getPermission(11))
-            out.writeInt(r.rotation);
+            out.writeInt(rotation[r]);
          if(controller.getPermission(12))
-            out.writeText(r.content);
+            out.writeText(new String(chars, contentStart[r], contentLength[r]));
          
          out.endRow();
       }
-      rows.clear();
+      clear();
       out.endPage();
    }
    
-   private final ArrayList<GridRipperRow> rows;
+   /**
+    * make room for one more entry, and start its content at the end of the
+    * char array
+    * 
+    * @return the index of the new entry
+    */
+   private int startRow()
+   {
+      if(size == yStart.length)
+      {
+         final int c = size * 2;
+         yStart = grow(yStart, c);
+         ySmooth = grow(ySmooth, c);
+         xStart = grow(xStart, c);
+         xEnd = grow(xEnd, c);
+         fontSize = grow(fontSize, c);
+         rotation = grow(rotation, c);
+         contentStart = grow(contentStart, c);
+         contentLength = grow(contentLength, c);
+         order = new int[c];
+         scratch = null;
+      }
+      contentStart[size] = charCount;
+      return size;
+   }
+   
+   private void endRow(final int i, final float ys, final float xs, final float xe, final float fs, final int rot)
+   {
+      yStart[i] = ys;
+      xStart[i] = xs;
+      xEnd[i] = xe;
+      fontSize[i] = fs;
+      rotation[i] = rot;
+      contentLength[i] = charCount - contentStart[i];
+      size++;
+   }
+   
+   private void appendContent(final String s)
+   {
+      final int length = s.length();
+      if(charCount + length > chars.length)
+      {
+         final char[] c = new char[Math.max(chars.length * 2, charCount + length)];
+         System.arraycopy(chars, 0, c, 0, charCount);
+         chars = c;
+      }
+      s.getChars(0, length, chars, charCount);
+      charCount += length;
+   }
+   
+   private void appendContent(final char[] c, final int start, final int length)
+   {
+      if(charCount + length > chars.length)
+      {
+         final char[] grown = new char[Math.max(chars.length * 2, charCount + length)];
+         System.arraycopy(chars, 0, grown, 0, charCount);
+         chars = grown;
+      }
+      System.arraycopy(c, start, chars, charCount, length);
+      charCount += length;
+   }
+   
+   /**
+    * @return true if the content is empty or only whitespace (the same test as
+    *         String.trim().length() == 0)
+    */
+   private boolean isBlank(final int start, final int length)
+   {
+      for(int k = start; k < start + length; k++)
+      {
+         if(chars[k] > ' ')
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+   
+   /**
+    * sorts part of the order array (a stable merge sort of the entries'
+    * indices). Entries are compared by y_start, then x_start, x_end, font_size,
+    * rotation and finally content; or, if byX is true, by x_start, x_end,
+    * y_start, font_size, rotation and content.
+    */
+   private void sort(final int from, final int to, final boolean byX)
+   {
+      if(scratch == null || scratch.length < order.length)
+      {
+         scratch = new int[order.length];
+      }
+      mergeSort(order, scratch, from, to, byX);
+   }
+   
+   private void mergeSort(final int[] a, final int[] tmp, final int from, final int to, final boolean byX)
+   {
+      if(to - from <= _INSERTION_SORT_SIZE)
+      {
+         for(int j = from + 1; j < to; j++)
+         {
+            final int v = a[j];
+            int k = j - 1;
+            while(k >= from && compare(a[k], v, byX) > 0)
+            {
+               a[k + 1] = a[k];
+               k--;
+            }
+            a[k + 1] = v;
+         }
+         return;
+      }
+      final int mid = (from + to) >>> 1;
+      mergeSort(a, tmp, from, mid, byX);
+      mergeSort(a, tmp, mid, to, byX);
+      if(compare(a[mid - 1], a[mid], byX) <= 0)
+      {
+         return;
+      }
+      System.arraycopy(a, from, tmp, from, to - from);
+      int left = from;
+      int right = mid;
+      for(int k = from; k < to; k++)
+      {
+         if(right >= to || (left < mid && compare(tmp[left], tmp[right], byX) <= 0))
+         {
+            a[k] = tmp[left++];
+         }
+         else
+         {
+            a[k] = tmp[right++];
+         }
+      }
+   }
+   
+   private int compare(final int a, final int b, final boolean byX)
+   {
+      if(a == b)
+      {
+         return 0;
+      }
+      if(!byX && yStart[a] != yStart[b])
+      {
+         return yStart[a] < yStart[b] ? -1 : 1;
+      }
+      if(xStart[a] != xStart[b])
+      {
+         return xStart[a] < xStart[b] ? -1 : 1;
+      }
+      if(xEnd[a] != xEnd[b])
+      {
+         return xEnd[a] < xEnd[b] ? -1 : 1;
+      }
+      if(byX && yStart[a] != yStart[b])
+      {
+         return yStart[a] < yStart[b] ? -1 : 1;
+      }
+      if(fontSize[a] != fontSize[b])
+      {
+         return fontSize[a] < fontSize[b] ? -1 : 1;
+      }
+      if(rotation[a] != rotation[b])
+      {
+         return rotation[a] < rotation[b] ? -1 : 1;
+      }
+      final int la = contentLength[a];
+      final int lb = contentLength[b];
+      final int n = Math.min(la, lb);
+      for(int k = 0; k < n; k++)
+      {
+         final char ca = chars[contentStart[a] + k];
+         final char cb = chars[contentStart[b] + k];
+         if(ca != cb)
+         {
+            return ca - cb;
+         }
+      }
+      return la - lb;
+   }
+   
+   private static float[] grow(final float[] a, final int capacity)
+   {
+      final float[] b = new float[capacity];
+      System.arraycopy(a, 0, b, 0, a.length);
+      return b;
+   }
+   
+   private static int[] grow(final int[] a, final int capacity)
+   {
+      final int[] b = new int[capacity];
+      System.arraycopy(a, 0, b, 0, a.length);
+      return b;
+   }
+   
+   private int size = 0;
+   private float[] yStart;
+   private float[] ySmooth;
+   private float[] xStart;
+   private float[] xEnd;
+   private float[] fontSize;
+   private int[] rotation;
+   private int[] contentStart;
+   private int[] contentLength;
+   private char[] chars;
+   private int charCount = 0;
+   
+   /**
+    * the indices of the entries, in the order they are written
+    */
+   private int[] order;
+   private int[] scratch = null;
+   
+   private float tolerance = GridRipperController._DEFAULT_LINE_TOLERANCE;
+   private boolean relativeToFontSize = false;
+   private boolean orderByX = false;
+   
+   /**
+    * where the page is from, for the JFR events (0 if it is not known)
+    */
+   private int fileNumber = 0;
+   private int pdfPage = 0;
+   
+   private static final int _INSERTION_SORT_SIZE = 16;
 }
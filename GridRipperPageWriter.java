@@ -0,0 +1,60 @@
+/**
+ * A GridRipperWriter that can also write a whole page of rows in one call. When
+ * the controller's writer implements this interface, each page is handed to
+ * writePage (between startPage and endPage) instead of being sent one cell at a
+ * time, so the writer can encode the page in a single loop. Writers that only
+ * implement GridRipperWriter are still sent the page cell by cell.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+interface GridRipperPageWriter extends GridRipperWriter
+{
+   /**
+    * the writer should write every row of the page, one row for each entry, in
+    * order (page.getRow(0) is the first row). Each row has one cell for each of
+    * the columns, in the order given.
+    * 
+    * @param page
+    *           the page, already sorted
+    * @param columns
+    *           the ids of the columns to write (the _COLUMN_ constants); these
+    *           are the columns that the controller has permission to write
+    * @param c
+    *           the controller, for the file and page columns
+    * @param firstId
+    *           the row_id of the first row; the rows are numbered
+    *           consecutively
+    */
+   public void writePage(final GridRipperPage page, final int[] columns, final GridRipperController c,
+         final int firstId);
+   
+   public static final int _COLUMN_ROW_ID = 0;
+   public static final int _COLUMN_FILE_NUMBER = 1;
+   public static final int _COLUMN_FILE_PATH = 2;
+   public static final int _COLUMN_FILE_NAME = 3;
+   public static final int _COLUMN_PDF_PAGE = 4;
+   public static final int _COLUMN_TOTAL_PAGE = 5;
+   public static final int _COLUMN_Y_START = 6;
+   public static final int _COLUMN_Y_SMOOTH = 7;
+   public static final int _COLUMN_X_START = 8;
+   public static final int _COLUMN_X_END = 9;
+   public static final int _COLUMN_FONT_SIZE = 10;
+   public static final int _COLUMN_ROTATION = 11;
+   public static final int _COLUMN_CONTENT = 12;
+   
+}
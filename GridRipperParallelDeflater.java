@@ -0,0 +1,260 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * compresses a stream into raw DEFLATE data (as stored in a zip entry) on
+ * several threads at once, the way pigz does. The data is cut into blocks, and
+ * each block is compressed separately (with the last 32K of the previous block
+ * as its dictionary, so little compression is lost). Every block but the last
+ * ends with a sync flush, which ends it on a byte boundary, so the compressed
+ * blocks can simply be written one after another. The CRC-32 and the sizes
+ * that the zip entry needs are kept as the data is written.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+class GridRipperParallelDeflater extends OutputStream
+{
+   /**
+    * @param sink
+    *           where the compressed data is written (it is not closed)
+    * @param level
+    *           the compression level, 0-9 (or Deflater.DEFAULT_COMPRESSION)
+    * @param pool
+    *           the threads to compress on, or null to compress each block on
+    *           the thread that writes it
+    * @param threads
+    *           the number of threads in the pool (at most twice this many
+    *           blocks are compressed or waiting to be written at a time)
+    */
+   GridRipperParallelDeflater(final OutputStream sink, final int level, final ExecutorService pool, final int threads)
+   {
+      this.sink = sink;
+      this.level = level;
+      this.pool = pool;
+      maxPending = pool == null ? 1 : Math.max(1, threads * 2);
+   }
+   
+   public void write(final int b) throws IOException
+   {
+      if(count == block.length)
+      {
+         submit(false);
+      }
+      block[count++] = (byte) b;
+   }
+   
+   public void write(final byte[] b, final int offset, final int length) throws IOException
+   {
+      int off = offset;
+      int len = length;
+      while(len > 0)
+      {
+         if(count == block.length)
+         {
+            submit(false);
+         }
+         final int n = Math.min(len, block.length - count);
+         System.arraycopy(b, off, block, count, n);
+         count += n;
+         off += n;
+         len -= n;
+      }
+   }
+   
+   /**
+    * compress what is left, write all of the compressed data to the sink and
+    * end the DEFLATE stream. Nothing can be written after this.
+    */
+   void finish() throws IOException
+   {
+      if(finished)
+      {
+         return;
+      }
+      submit(true);
+      while(!pending.isEmpty())
+      {
+         writeOldest();
+      }
+      finished = true;
+   }
+   
+   /**
+    * @return the CRC-32 of the data written so far
+    */
+   long getCrc()
+   {
+      return crc.getValue();
+   }
+   
+   /**
+    * @return the number of (uncompressed) bytes written so far
+    */
+   long getBytesIn()
+   {
+      return bytesIn;
+   }
+   
+   /**
+    * @return the number of compressed bytes written to the sink so far
+    */
+   long getBytesOut()
+   {
+      return bytesOut;
+   }
+   
+   /**
+    * send the current block to be compressed, and start a new one
+    */
+   private void submit(final boolean last) throws IOException
+   {
+      crc.update(block, 0, count);
+      bytesIn += count;
+      
+      final byte[] data = block;
+      final int length = count;
+      final byte[] dictionary = previous;
+      final int dictionaryLength = previousCount;
+      if(pool == null)
+      {
+         write(deflate(data, length, dictionary, dictionaryLength, level, last));
+      }
+      else
+      {
+         while(pending.size() >= maxPending)
+         {
+            writeOldest();
+         }
+         pending.add(pool.submit(new Callable<ByteBuffer>()
+         {
+            public ByteBuffer call()
+            {
+               return deflate(data, length, dictionary, dictionaryLength, level, last);
+            }
+         }));
+      }
+      
+      // the block that was just sent is the dictionary for the next one, so a
+      // new array is needed (the old one may still be being compressed).
+      previous = block;
+      previousCount = count;
+      block = new byte[_BLOCK_SIZE];
+      count = 0;
+   }
+   
+   private void writeOldest() throws IOException
+   {
+      try
+      {
+         write(pending.remove().get());
+      }
+      catch(final InterruptedException iex)
+      {
+         Thread.currentThread().interrupt();
+         throw new IOException("Interrupted while compressing", iex);
+      }
+      catch(final ExecutionException eex)
+      {
+         throw new IOException("Compression failed", eex.getCause());
+      }
+   }
+   
+   private void write(final ByteBuffer compressed) throws IOException
+   {
+      sink.write(compressed.array(), 0, compressed.limit());
+      bytesOut += compressed.limit();
+   }
+   
+   /**
+    * compress one block into raw DEFLATE data that ends on a byte boundary (or,
+    * for the last block, that ends the stream)
+    */
+   private static ByteBuffer deflate(final byte[] data, final int length, final byte[] dictionary,
+         final int dictionaryLength, final int level, final boolean last)
+   {
+      final Deflater deflater = new Deflater(level, true);
+      try
+      {
+         if(dictionary != null)
+         {
+            final int n = Math.min(dictionaryLength, _DICTIONARY_SIZE);
+            deflater.setDictionary(dictionary, dictionaryLength - n, n);
+         }
+         deflater.setInput(data, 0, length);
+         if(last)
+         {
+            deflater.finish();
+         }
+         byte[] out = new byte[length + (length >> 3) + 64];
+         int size = 0;
+         while(true)
+         {
+            if(size == out.length)
+            {
+               out = Arrays.copyOf(out, out.length * 2);
+            }
+            final int n = deflater.deflate(out, size, out.length - size,
+                  last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+            size += n;
+            if(last ? deflater.finished() : size < out.length)
+            {
+               break;
+            }
+         }
+         final ByteBuffer b = ByteBuffer.wrap(out);
+         b.limit(size);
+         return b;
+      }
+      finally
+      {
+         deflater.end();
+      }
+   }
+   
+   private final OutputStream sink;
+   private final int level;
+   private final ExecutorService pool;
+   private final int maxPending;
+   
+   private byte[] block = new byte[_BLOCK_SIZE];
+   private int count = 0;
+   private byte[] previous = null;
+   private int previousCount = 0;
+   
+   /**
+    * the blocks that are being compressed, oldest first
+    */
+   private final ArrayDeque<Future<ByteBuffer>> pending = new ArrayDeque<Future<ByteBuffer>>();
+   
+   private final CRC32 crc = new CRC32();
+   private long bytesIn = 0;
+   private long bytesOut = 0;
+   private boolean finished = false;
+   
+   private static final int _BLOCK_SIZE = 256 * 1024;
+   private static final int _DICTIONARY_SIZE = 32 * 1024;
+}
@@ -1,10 +1,15 @@
 import java.io.BufferedWriter;
-import java.io.File;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.util.ArrayList;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
 import java.util.List;
 
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.DefaultResourceCache;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.text.PDFTextStripper;
@@ -42,6 +47,47 @@ class GridRipperPdfReader extends PDFTextStripper
     * @throws IOException
     */
    GridRipperPdfReader(final int mode, final GridRipperController controller) throws IOException
+   {
+      this(mode, controller, null, null);
+   }
+   
+   /**
+    * @param mode
+    *           indicates whether the reader should obtain output in the form of
+    *           phrases/words/characters
+    * @param controller
+    *           the object overseeing the operation of this reader
+    * @param result
+    *           if not null, finished pages are held in this object instead of
+    *           being written (this is how PDFs are ripped in parallel; the
+    *           controller writes the pages later, in order)
+    * @throws IOException
+    */
+   GridRipperPdfReader(final int mode, final GridRipperController controller, final GridRipperFileResult result)
+         throws IOException
+   {
+      this(mode, controller, result, null);
+   }
+   
+   /**
+    * @param mode
+    *           indicates whether the reader should obtain output in the form of
+    *           phrases/words/characters
+    * @param controller
+    *           the object overseeing the operation of this reader
+    * @param pipeline
+    *           finished pages are handed to this pipeline, which finishes and
+    *           writes them on its own threads
+    * @throws IOException
+    */
+   GridRipperPdfReader(final int mode, final GridRipperController controller, final GridRipperPipeline pipeline)
+         throws IOException
+   {
+      this(mode, controller, null, pipeline);
+   }
+   
+   private GridRipperPdfReader(final int mode, final GridRipperController controller,
+         final GridRipperFileResult result, final GridRipperPipeline pipeline) throws IOException
    {
       super();
       setSortByPosition(true);
@@ -55,28 +101,161 @@ class GridRipperPdfReader extends PDFTextStripper
       setParagraphStart("");
       setWordSeparator("");
       this.controller = controller;
+      this.result = result;
+      this.pipeline = pipeline;
+   }
+   
+   /**
+    * @param fileNumber
+    *           the number of the PDF that is ripped next (the first PDF is 1),
+    *           which is recorded in the JFR events
+    */
+   void setFileNumber(final int fileNumber)
+   {
+      this.fileNumber = fileNumber;
    }
    
    /**
     * open a PDF, read/rip its contents, and send to a GridRipperWriter
     * 
-    * @param f
-    *           the PDF file to be read/ripped (of course, the file is not
-    *           modified by this method)
+    * If the controller has a memory budget, the PDF's streams are held in
+    * memory only up to the budget, and in a scratch file after that, and the
+    * fonts and other resources that are read for a page are let go once the
+    * page is done (see endPage). The memory that ripping a PDF takes is then
+    * bounded by its largest page, rather than by the whole PDF.
+    * 
+    * If the controller has time limits, the PDF is abandoned (with a
+    * GridRipperSkipException) once it, or one of its pages, has taken longer
+    * than the limit; the same happens when the run is cancelled. The time is
+    * checked before each operator of the page's content, so a PDF that is
+    * stuck inside PDFBox (rather than in a long page) is only abandoned once
+    * PDFBox gets to the next operator, unless another thread writes it off
+    * first (see writeOff).
+    * 
+    * @param source
+    *           the PDF to be read/ripped (of course, the PDF is not modified by
+    *           this method)
     * @throws IOException
     */
-   void processFile(final File f) throws IOException
+   void processFile(final GridRipperSource source) throws IOException
    {
+      peakHeap = -1;
       if(controller.out.getErrorStatus() == GridRipperWriter._ERROR_STATUS_CRASH)
       {
          return;
       }
-      final BufferedWriter b = new BufferedWriter(new OutputStreamWriter(System.err));
-      PDDocument doc = PDDocument.load(f);
-      controller.setPdfPages(doc.getNumberOfPages());
-      writeText(doc, b);
-      doc.close();
-      b.flush();
+      controller.configureLineClustering(p);
+      // the rows of a page that was abandoned are not carried over.
+      p.clear();
+      peakHeap = 0;
+      sampleHeap();
+      endPageNanos = 0;
+      final long start = System.nanoTime();
+      path = source.getPath();
+      pageStart = 0;
+      fileLimit = controller.getFileTimeLimit() * 1000000;
+      pageLimit = controller.getPageTimeLimit() * 1000000;
+      // set last, as it tells writeOff that the rest is set.
+      fileStart = start;
+      try
+      {
+         checkTime();
+         final BufferedWriter b = new BufferedWriter(new OutputStreamWriter(System.err));
+         final long budget = controller.getMemoryBudget();
+         final GridRipperLoadEvent event = new GridRipperLoadEvent();
+         event.begin();
+         final PDDocument doc = source.load(budget > 0 ? MemoryUsageSetting.setupMixed(budget)
+               : MemoryUsageSetting.setupMainMemoryOnly());
+         event.end();
+         sampleHeap();
+         if(event.shouldCommit())
+         {
+            event.fileNumber = fileNumber;
+            event.path = source.getPath();
+            event.pages = doc.getNumberOfPages();
+            event.commit();
+         }
+         try
+         {
+            checkTime();
+            synchronized(this)
+            {
+               // a PDF that was written off while it was loaded goes no
+               // further.
+               checkWrittenOff();
+               open = doc;
+               if(pipeline != null)
+               {
+                  pipeline.setPdfPages(doc.getNumberOfPages());
+               }
+               else if(result == null)
+               {
+                  controller.setPdfPages(doc.getNumberOfPages());
+               }
+               else
+               {
+                  result.setPdfPages(doc.getNumberOfPages());
+               }
+            }
+            writeText(doc, b);
+         }
+         finally
+         {
+            synchronized(this)
+            {
+               open = null;
+            }
+            // with a memory budget, closing the PDF also deletes its scratch
+            // file, so it must be done even if the PDF cannot be read.
+            doc.close();
+         }
+         b.flush();
+      }
+      finally
+      {
+         fileStart = 0;
+         sampleHeap();
+         // the time in endPage is spent sorting and writing, not parsing.
+         final long elapsed = System.nanoTime() - start;
+         final GridRipperMetrics metrics = GridRipperMetrics.get();
+         metrics.parsed(elapsed - endPageNanos);
+         metrics.pdfRipped(source.getPath(), elapsed);
+      }
+   }
+   
+   /**
+    * read/rip every page of a PDF that is already open (see
+    * GridRipperRowIterator), in a single pass. The controller must already be
+    * on the PDF (see GridRipperController.startFile). The PDF is not closed.
+    */
+   void processDocument(final PDDocument doc) throws IOException
+   {
+      controller.configureLineClustering(p);
+      writeText(doc, new StringWriter());
+   }
+   
+   /**
+    * @return the most heap memory (in bytes) that was in use while the last
+    *         PDF was ripped, or -1 if it was not ripped. The heap is sampled
+    *         when the PDF is started, once it is loaded, as each page is
+    *         finished, and when it is done, so the real peak (between the
+    *         samples) can be higher. The memory is measured for the whole JVM,
+    *         so when PDFs are ripped on several threads at once, it includes
+    *         the others.
+    */
+   long getPeakHeap()
+   {
+      return peakHeap;
+   }
+   
+   /**
+    * add a sample of the heap in use to the peak of the current PDF. The
+    * JVM's own peaks are not used: they can only be reset for the whole JVM,
+    * which would lose the peak of a PDF that another thread is ripping.
+    */
+   private void sampleHeap()
+   {
+      peakHeap = Math.max(peakHeap, _MEMORY.getHeapMemoryUsage().getUsed());
    }
    
    protected void writeString(String text, List<TextPosition> textPositions) throws IOException
@@ -85,7 +264,11 @@ class GridRipperPdfReader extends PDFTextStripper
       {
          return;
       }
-      else if(mode == _MODE_PHRASES)
+      GridRipperMetrics.get().glyphsRead(textPositions.size());
+      final GridRipperSegmentEvent event = new GridRipperSegmentEvent();
+      event.begin();
+      final int rows = p.size();
+      if(mode == _MODE_PHRASES)
       {
          writeStringPhrases(text, textPositions);
       }
@@ -97,99 +280,90 @@ class GridRipperPdfReader extends PDFTextStripper
       {
          writeStringCharacters(text, textPositions);
       }
+      event.end();
+      if(event.shouldCommit())
+      {
+         event.fileNumber = fileNumber;
+         event.page = getCurrentPageNo();
+         event.glyphs = textPositions.size();
+         event.rows = p.size() - rows;
+         event.commit();
+      }
    }
    
    /**
     * this method captures each phrase as a separate entry and sends them to the
     * GridRipperPage object, which holds them until the page is completely
-    * processed by this PDF reader.
+    * processed by this PDF reader. A new phrase starts wherever the gap between
+    * two characters is more than two spaces wide (or the text moves back by
+    * more than a space). The phrases are found in a single pass, and are passed
+    * to the page as index ranges, so no lists are created.
     */
    private void writeStringPhrases(String text, List<TextPosition> textPositions) throws IOException
    {
+      final int n = textPositions.size();
       final float spaceWidth = textPositions.get(0).getWidthOfSpace();
-      final float[] diff = new float[textPositions.size() - 1];
-      for(int i = 1; i < textPositions.size(); i++)
-      {
-         final TextPosition one = textPositions.get(i - 1);
-         final TextPosition two = textPositions.get(i);
-         diff[i - 1] = two.getXDirAdj() - (one.getXDirAdj() + one.getWidthDirAdj());
-      }
-      
-      final ArrayList<ArrayList<TextPosition>> words = new ArrayList<ArrayList<TextPosition>>();
-      ArrayList<TextPosition> current = new ArrayList<TextPosition>();
-      words.add(current);
-      current.add(textPositions.get(0));
-      
-      for(int i = 1; i < textPositions.size(); i++)
-      {
-         final TextPosition tp = textPositions.get(i);
-         if(diff[i - 1] < -spaceWidth || diff[i - 1] > 2.0 * spaceWidth)
-         {
-            current = new ArrayList<TextPosition>();
-            words.add(current);
-         }
-         current.add(tp);
-      }
-      
-      for(final ArrayList<TextPosition> ttpp : words)
+      int start = 0;
+      for(int i = 1; i < n; i++)
       {
-         final GridRipperRow r = new GridRipperRow(ttpp);
-         if(r.content.trim().length() > 0)
+         if(isBreak(textPositions, i, spaceWidth))
          {
-            p.add(r);
+            p.add(textPositions, start, i);
+            start = i;
          }
       }
+      p.add(textPositions, start, n);
    }
    
+   /**
+    * the same as writeStringPhrases, except that whitespace also ends a word
+    * (and is not part of any word).
+    */
    private void writeStringWords(String text, List<TextPosition> textPositions) throws IOException
    {
+      final int n = textPositions.size();
       final float spaceWidth = textPositions.get(0).getWidthOfSpace();
-      final float[] diff = new float[textPositions.size() - 1];
-      for(int i = 1; i < textPositions.size(); i++)
-      {
-         final TextPosition one = textPositions.get(i - 1);
-         final TextPosition two = textPositions.get(i);
-         diff[i - 1] = two.getXDirAdj() - (one.getXDirAdj() + one.getWidthDirAdj());
-      }
-      
-      final ArrayList<ArrayList<TextPosition>> words = new ArrayList<ArrayList<TextPosition>>();
-      ArrayList<TextPosition> current = new ArrayList<TextPosition>();
-      words.add(current);
-      
-      for(int i = 0; i < textPositions.size(); i++)
-      {
-         final TextPosition tp = textPositions.get(i);
-         final char c = tp.getUnicode().charAt(0);
+      // the index of the first character of the current word, or -1 if there
+      // is no current word.
+      int start = -1;
+      for(int i = 0; i < n; i++)
+      {
+         final char c = textPositions.get(i).getUnicode().charAt(0);
          if(c < 32 || Character.isWhitespace(c))
          {
-            if(!current.isEmpty())
+            if(start != -1)
             {
-               current = new ArrayList<TextPosition>();
-               words.add(current);
+               p.add(textPositions, start, i);
+               start = -1;
             }
          }
-         else
+         else if(start == -1)
          {
-            if(!current.isEmpty() && (diff[i - 1] < -spaceWidth || diff[i - 1] > 2.0 * spaceWidth))
-            {
-               current = new ArrayList<TextPosition>();
-               words.add(current);
-            }
-            current.add(tp);
+            start = i;
          }
-      }
-      
-      for(final ArrayList<TextPosition> ttpp : words)
-      {
-         if(!ttpp.isEmpty())
+         else if(isBreak(textPositions, i, spaceWidth))
          {
-            final GridRipperRow r = new GridRipperRow(ttpp);
-            if(r.content.trim().length() > 0)
-            {
-               p.add(r);
-            }
+            p.add(textPositions, start, i);
+            start = i;
          }
       }
+      if(start != -1)
+      {
+         p.add(textPositions, start, n);
+      }
+   }
+   
+   /**
+    * @return true if the gap between character i - 1 and character i is too
+    *         large (or too far backwards) for them to be in the same phrase or
+    *         word
+    */
+   private static boolean isBreak(final List<TextPosition> textPositions, final int i, final float spaceWidth)
+   {
+      final TextPosition one = textPositions.get(i - 1);
+      final TextPosition two = textPositions.get(i);
+      final float diff = two.getXDirAdj() - (one.getXDirAdj() + one.getWidthDirAdj());
+      return diff < -spaceWidth || diff > 2.0 * spaceWidth;
    }
    
    /**
@@ -201,32 +375,265 @@ class GridRipperPdfReader extends PDFTextStripper
    {
       for(final TextPosition tp : textPositions)
       {
-         p.add(new GridRipperRow(tp));
+         p.add(tp);
+      }
+   }
+   
+   protected void startPage(final PDPage page) throws IOException
+   {
+      pageStart = System.nanoTime();
+      pageEvent = new GridRipperPageEvent();
+      pageEvent.begin();
+      p.setOrigin(fileNumber, getCurrentPageNo());
+      if(result == null && pipeline == null)
+      {
+         synchronized(this)
+         {
+            checkWrittenOff();
+            controller.startPage();
+         }
       }
    }
    
-   protected void startPage(final PDPage page)
+   protected void processOperator(final Operator operator, final List<COSBase> operands) throws IOException
    {
-      controller.startPage();
+      checkTime();
+      super.processOperator(operator, operands);
+   }
+   
+   /**
+    * abandon the PDF if it was written off, if the run has been cancelled, or
+    * if the PDF or the current page has taken longer than its time limit
+    */
+   private void checkTime() throws GridRipperSkipException
+   {
+      checkWrittenOff();
+      final GridRipperSkipException overrun = getOverrun();
+      if(overrun != null)
+      {
+         throw overrun;
+      }
+   }
+   
+   /**
+    * @return why the PDF should be abandoned (the run has been cancelled, or
+    *         the PDF or the current page has taken longer than its time
+    *         limit), or null if it can carry on
+    */
+   private GridRipperSkipException getOverrun()
+   {
+      if(controller.isCancelled())
+      {
+         return new GridRipperSkipException(path, "the run was cancelled");
+      }
+      if(fileLimit == 0 && pageLimit == 0)
+      {
+         return null;
+      }
+      final long now = System.nanoTime();
+      if(fileLimit > 0 && now - fileStart > fileLimit)
+      {
+         return new GridRipperSkipException(path,
+               "it took longer than the time limit of " + fileLimit / 1000000 + " ms for a PDF");
+      }
+      final long page = pageStart;
+      if(pageLimit > 0 && page != 0 && now - page > pageLimit)
+      {
+         return new GridRipperSkipException(path,
+               "page " + getCurrentPageNo() + " took longer than the time limit of " + pageLimit / 1000000
+                     + " ms for a page");
+      }
+      return null;
+   }
+   
+   /**
+    * stop a PDF that was written off from going any further, if PDFBox gets
+    * back to the reader after all
+    */
+   private void checkWrittenOff() throws GridRipperSkipException
+   {
+      if(writtenOff)
+      {
+         throw new GridRipperSkipException(path, "it was written off");
+      }
+   }
+   
+   /**
+    * write off the PDF that this reader is ripping (on another thread), if it
+    * has run out of time or the run has been cancelled, without waiting for
+    * PDFBox to get back to the reader: it may be stuck inside one operator, or
+    * in loading the PDF (such as repairing its cross reference table).
+    * Nothing more of the PDF is passed on, and it is closed, so that PDFBox
+    * fails as soon as it reads any more of it. The reader cannot be used
+    * again after this.
+    * 
+    * @return why the PDF was written off, or null if it can carry on (or no
+    *         PDF is being ripped)
+    */
+   GridRipperSkipException writeOff()
+   {
+      if(fileStart == 0)
+      {
+         return null;
+      }
+      final GridRipperSkipException overrun = getOverrun();
+      if(overrun == null)
+      {
+         return null;
+      }
+      final PDDocument doc;
+      synchronized(this)
+      {
+         writtenOff = true;
+         doc = open;
+      }
+      if(doc != null)
+      {
+         try
+         {
+            doc.close();
+         }
+         catch(final IOException iox)
+         {
+            // the ripping thread closes it again when it gives up.
+         }
+      }
+      return overrun;
+   }
+   
+   /**
+    * @return true if the reader has written off a PDF, and cannot be used
+    *         again
+    */
+   boolean isWrittenOff()
+   {
+      return writtenOff;
+   }
+   
+   /**
+    * @return how long (in nanoseconds) until the PDF that is being ripped, or
+    *         its current page, runs out of time; Long.MAX_VALUE if no PDF is
+    *         being ripped, or there is no limit that can run out
+    */
+   long getTimeLeft()
+   {
+      final long file = fileStart;
+      if(file == 0)
+      {
+         return Long.MAX_VALUE;
+      }
+      final long now = System.nanoTime();
+      long left = Long.MAX_VALUE;
+      if(fileLimit > 0)
+      {
+         left = file + fileLimit - now;
+      }
+      final long page = pageStart;
+      if(pageLimit > 0 && page != 0)
+      {
+         left = Math.min(left, page + pageLimit - now);
+      }
+      return left;
    }
    
    /**
     * when the reader is almost done processing a page, the last thing to do is
     * to invoke the GridRipperPage object's writePage method. The
     * GridRipperWriter does not actually start writing data from the PDF page
-    * until this point.
+    * until this point. (With a pipeline, the page is handed over to be
+    * finished and written by the pipeline's threads instead.)
     */
    protected void endPage(final PDPage page) throws IOException
    {
-      p.writePage(controller);
+      final long start = System.nanoTime();
+      GridRipperMetrics.get().pageRead();
+      sampleHeap();
+      // the page has no event if startPage was not called (as when a
+      // benchmark ends a page that it filled itself).
+      if(pageEvent != null)
+      {
+         pageEvent.end();
+         if(pageEvent.shouldCommit())
+         {
+            pageEvent.fileNumber = fileNumber;
+            pageEvent.page = getCurrentPageNo();
+            pageEvent.rows = p.size();
+            pageEvent.commit();
+         }
+         pageEvent = null;
+      }
+      pageStart = 0;
+      if(controller.getMemoryBudget() > 0)
+      {
+         // each page takes its resources from the cache that the PDF has when
+         // the page is read, so the next page starts with an empty one.
+         document.setResourceCache(new DefaultResourceCache());
+      }
+      synchronized(this)
+      {
+         // a PDF that was written off passes on no more pages (this waits
+         // for a page that is being passed on).
+         checkWrittenOff();
+         if(pipeline != null)
+         {
+            p = pipeline.addPage(p);
+         }
+         else if(result == null)
+         {
+            p.writePage(controller);
+         }
+         else
+         {
+            p.finish();
+            result.addPage(p.copy());
+            p.clear();
+         }
+      }
+      endPageNanos += System.nanoTime() - start;
    }
    
    protected float[] values = new float[5];
    private final GridRipperController controller;
-   private final GridRipperPage p = new GridRipperPage();
-   private final int mode;
+   private final GridRipperFileResult result;
+   private final GridRipperPipeline pipeline;
+   /**
+    * the page being read (with a pipeline, each page is handed over when it
+    * has been read, and an empty one is handed back)
+    */
+   private GridRipperPage p = new GridRipperPage();
+   private long peakHeap = -1;
+   /**
+    * the time spent in endPage while ripping the current PDF
+    */
+   private long endPageNanos = 0;
+   private int fileNumber = 0;
    
+   /**
+    * the time limits of the current PDF (0 for none), in nanoseconds, and when
+    * it (0 when no PDF is being ripped) and its current page (0 between pages)
+    * were started. The starts are read by writeOff on other threads.
+    */
+   private String path = null;
+   private long fileLimit = 0;
+   private long pageLimit = 0;
+   private volatile long fileStart = 0;
+   private volatile long pageStart = 0;
+   /**
+    * set (under the reader's lock, which is held while anything is passed on)
+    * when the PDF is written off
+    */
+   private volatile boolean writtenOff = false;
+   /**
+    * the PDF once it is loaded, so that writeOff can close it
+    */
+   private PDDocument open = null;
+   /**
+    * the JFR event of the page being read
+    */
+   private GridRipperPageEvent pageEvent = null;
+   private final int mode;
    private static final int _MODE_PHRASES = 0;
    private static final int _MODE_WORDS = 1;
    private static final int _MODE_CHARACTERS = 2;
+   private static final MemoryMXBean _MEMORY = ManagementFactory.getMemoryMXBean();
 }
@@ -0,0 +1,296 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * lets a GridRipperPdfReader hand its pages over to be finished and written by
+ * other threads, so that the reader does not wait for the writer (or the disk)
+ * after every page. A page goes through three stages:
+ * 
+ * 1) the reader fills the page, and passes it to addPage;
+ * 
+ * 2) a thread of a small pool sorts and smooths it (GridRipperPage.finish);
+ * 
+ * 3) a single committer thread writes the pages to the controller's writer, in
+ * the order that the reader passed them in, and then hands each page back to
+ * the reader to be filled again.
+ * 
+ * Only a fixed number of pages exist, so when the writer falls behind, addPage
+ * waits for a page to come back, and memory use stays flat. Everything else
+ * that must be done in order with the pages (such as starting and ending a
+ * PDF) is passed to commit, and is run by the committer thread, which is the
+ * only thread that uses the writer.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+class GridRipperPipeline
+{
+   /**
+    * @param controller
+    *           the controller whose writer the pages are written to
+    * @param threads
+    *           the number of threads that finish pages; 0 finishes them on the
+    *           committer thread
+    * @param pages
+    *           the number of pages that can be waiting to be finished or
+    *           written (not counting the page the reader is filling)
+    */
+   GridRipperPipeline(final GridRipperController controller, final int threads, final int pages)
+   {
+      this.controller = controller;
+      this.pages = pages < 1 ? 1 : pages;
+      queue = new ArrayBlockingQueue<Runnable>(this.pages * 2);
+      // the reader's own page is handed over too, so there can be one more
+      // page than the pipeline creates.
+      free = new ArrayBlockingQueue<GridRipperPage>(this.pages + 1);
+      if(threads > 0)
+      {
+         pool = Executors.newFixedThreadPool(threads, new ThreadFactory()
+         {
+            public Thread newThread(final Runnable r)
+            {
+               final Thread t = new Thread(r, "GridRipper finish");
+               t.setDaemon(true);
+               return t;
+            }
+         });
+      }
+      else
+      {
+         pool = null;
+      }
+      committer = new Thread(new Runnable()
+      {
+         public void run()
+         {
+            commitAll();
+         }
+      }, "GridRipper commit");
+      committer.start();
+   }
+   
+   /**
+    * pass a filled page on to be finished and written
+    * 
+    * @return an empty page for the reader to fill next
+    */
+   GridRipperPage addPage(final GridRipperPage page) throws IOException
+   {
+      final Future<GridRipperPage> finished;
+      if(pool == null)
+      {
+         finished = null;
+      }
+      else
+      {
+         finished = pool.submit(new Callable<GridRipperPage>()
+         {
+            public GridRipperPage call()
+            {
+               page.finish();
+               return page;
+            }
+         });
+      }
+      commit(new Runnable()
+      {
+         public void run()
+         {
+            commitPage(page, finished);
+         }
+      });
+      
+      GridRipperPage next = free.poll();
+      if(next == null && created < pages)
+      {
+         created++;
+         next = new GridRipperPage();
+         controller.configureLineClustering(next);
+      }
+      if(next == null)
+      {
+         try
+         {
+            next = free.take();
+         }
+         catch(final InterruptedException iex)
+         {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a page to be written");
+         }
+      }
+      return next;
+   }
+   
+   /**
+    * @param p
+    *           the number of pages in the PDF that is being read (this is
+    *           passed on to the controller in order with the pages)
+    */
+   void setPdfPages(final int p) throws IOException
+   {
+      commit(new Runnable()
+      {
+         public void run()
+         {
+            controller.setPdfPages(p);
+         }
+      });
+   }
+   
+   /**
+    * run r on the committer thread, after everything that has already been
+    * passed to the pipeline
+    */
+   void commit(final Runnable r) throws IOException
+   {
+      try
+      {
+         queue.put(r);
+      }
+      catch(final InterruptedException iex)
+      {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("Interrupted while waiting for pages to be written");
+      }
+   }
+   
+   /**
+    * wait for everything that has been passed to the pipeline to be written,
+    * and stop its threads
+    */
+   void close()
+   {
+      try
+      {
+         queue.put(end);
+         committer.join();
+      }
+      catch(final InterruptedException iex)
+      {
+         Thread.currentThread().interrupt();
+         controller.out.declareFatalError();
+      }
+      finally
+      {
+         if(pool != null)
+         {
+            pool.shutdownNow();
+         }
+      }
+   }
+   
+   /**
+    * the committer thread's loop
+    */
+   private void commitAll()
+   {
+      while(true)
+      {
+         final Runnable r;
+         try
+         {
+            r = queue.take();
+         }
+         catch(final InterruptedException iex)
+         {
+            iex.printStackTrace();
+            controller.out.declareFatalError();
+            continue;
+         }
+         if(r == end)
+         {
+            return;
+         }
+         try
+         {
+            r.run();
+         }
+         catch(final RuntimeException rex)
+         {
+            rex.printStackTrace();
+            controller.out.declareFatalError();
+         }
+      }
+   }
+   
+   private void commitPage(final GridRipperPage page, final Future<GridRipperPage> finished)
+   {
+      try
+      {
+         if(finished == null)
+         {
+            page.finish();
+         }
+         else
+         {
+            finished.get();
+         }
+         controller.commitPage(page);
+      }
+      catch(final InterruptedException iex)
+      {
+         iex.printStackTrace();
+         controller.out.declareFatalError();
+      }
+      catch(final ExecutionException eex)
+      {
+         eex.printStackTrace();
+         controller.out.declareFatalError();
+      }
+      finally
+      {
+         page.clear();
+         free.add(page);
+      }
+   }
+   
+   private final GridRipperController controller;
+   private final int pages;
+   private int created = 0;
+   
+   private final ExecutorService pool;
+   private final Thread committer;
+   
+   /**
+    * what the committer thread is to do, in order
+    */
+   private final ArrayBlockingQueue<Runnable> queue;
+   
+   /**
+    * the pages that have been written, ready to be filled again
+    */
+   private final ArrayBlockingQueue<GridRipperPage> free;
+   
+   /**
+    * put on the queue to stop the committer thread
+    */
+   private final Runnable end = new Runnable()
+   {
+      public void run()
+      {
+         // no action is required.
+      }
+   };
+}
@@ -0,0 +1,70 @@
+/**
+ * is told how a run is going (see GridRipperController.addProgressListener),
+ * so that a GUI, or a program that embeds GridRipper, can show progress
+ * without polling the controller.
+ * 
+ * The events of a run are sent one at a time, in order, by the thread that
+ * writes the output (which is not the Swing event thread: a GUI should pass
+ * them on with SwingUtilities.invokeLater). They are sent while the output is
+ * being written, so a listener should return quickly. Pages are reported at
+ * most once per progress interval (see
+ * GridRipperController.setProgressInterval); the pages in between are added
+ * to the next event.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+public interface GridRipperProgressListener
+{
+   /**
+    * @param fileNumber
+    *           the number of the PDF (the first PDF is 1)
+    * @param fileCount
+    *           the number of PDFs in the run
+    * @param path
+    *           the logical path of the PDF
+    */
+   public void fileStarted(final int fileNumber, final int fileCount, final String path);
+   
+   /**
+    * @param fileNumber
+    *           the number of the PDF (the first PDF is 1)
+    * @param pagesDone
+    *           the number of pages of the PDF that have been written
+    * @param pdfPages
+    *           the number of pages in the PDF (0 if it is not known yet)
+    * @param rows
+    *           the number of rows that were written since the last event
+    */
+   public void pagesCompleted(final int fileNumber, final int pagesDone, final int pdfPages, final int rows);
+   
+   /**
+    * @param fileNumber
+    *           the number of the PDF (the first PDF is 1)
+    * @param errors
+    *           true if the PDF could not be ripped completely
+    */
+   public void fileFinished(final int fileNumber, final boolean errors);
+   
+   /**
+    * the run is done (or has stopped)
+    * 
+    * @param errorStatus
+    *           the writer's error status (GridRipperWriter._ERROR_STATUS_*)
+    */
+   public void jobFinished(final int errorStatus);
+}
@@ -0,0 +1,65 @@
+import java.io.IOException;
+
+/**
+ * A GridRipperWriter whose output can be cut back to an earlier point and
+ * continued, so that a run that was stopped part of the way through can be
+ * resumed (see GridRipperController.setCheckpoint). After each PDF, the
+ * controller asks the writer for a checkpoint: the length of its output, with
+ * everything up to that length safely on the disk. To resume, the controller
+ * calls resume (instead of open) with the length from the last checkpoint, and
+ * the writer removes anything after it and carries on from there. The same
+ * is done during a run to take a PDF that was skipped part of the way through
+ * back out of the output.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+interface GridRipperResumableWriter extends GridRipperWriter
+{
+   /**
+    * write everything so far to the disk
+    * 
+    * @return the length of the output
+    */
+   public long checkpoint() throws IOException;
+   
+   /**
+    * @return the length of the output so far, including anything that is not
+    *         on the disk yet
+    */
+   public long getLength();
+   
+   /**
+    * remove everything after length from the output, and carry on from there
+    * 
+    * @param length
+    *           an earlier length of the output (from getLength or checkpoint)
+    */
+   public void truncate(final long length) throws IOException;
+   
+   /**
+    * this method is called by the controller, instead of open, to continue a
+    * run from a checkpoint
+    * 
+    * @param c
+    *           the controller
+    * @param length
+    *           the length of the output at the checkpoint; anything after it
+    *           is removed
+    */
+   public void resume(final GridRipperController c, final long length) throws IOException;
+}
@@ -0,0 +1,216 @@
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * rips a single PDF (or a range of its pages), on a worker thread, with its
+ * own PDF reader and its own copy of the PDF. The result is handed back to the
+ * controller, which writes the results of the tasks in the same order that the
+ * PDFs (and pages) were listed. A task can also rip a whole PDF with a reader
+ * that passes the pages on itself, so that the PDF can be written off while it
+ * is being ripped (see writeOff).
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+class GridRipperRipTask implements Callable<GridRipperFileResult>
+{
+   /**
+    * @param fileNumber
+    *           the number of the PDF in the run (the first PDF is 1)
+    * @param firstPage
+    *           the first page to rip (the first page of the PDF is 1)
+    * @param lastPage
+    *           the last page to rip (Integer.MAX_VALUE for the rest of the PDF)
+    */
+   GridRipperRipTask(final GridRipperSource source, final int fileNumber, final int mode,
+         final GridRipperController controller, final int firstPage, final int lastPage)
+   {
+      this.source = source;
+      this.fileNumber = fileNumber;
+      this.mode = mode;
+      this.controller = controller;
+      this.firstPage = firstPage;
+      this.lastPage = lastPage;
+      this.passOn = null;
+   }
+   
+   /**
+    * @param reader
+    *           the reader to rip the whole PDF with, which passes its pages on
+    *           itself (to the controller's writer, or to a pipeline) instead
+    *           of holding them in the result
+    */
+   GridRipperRipTask(final GridRipperSource source, final int fileNumber, final GridRipperController controller,
+         final GridRipperPdfReader reader)
+   {
+      this.source = source;
+      this.fileNumber = fileNumber;
+      this.mode = 0;
+      this.controller = controller;
+      this.firstPage = 1;
+      this.lastPage = Integer.MAX_VALUE;
+      this.passOn = reader;
+   }
+   
+   /**
+    * rip the pages, or (if the controller has a GridRipperExtractionCache and
+    * this task is for the whole PDF) read them from the cache. A whole PDF
+    * that is ripped without errors is added to the cache.
+    */
+   public GridRipperFileResult call()
+   {
+      final GridRipperExtractionCache cache = passOn == null ? controller.getCache() : null;
+      String key = null;
+      if(cache != null && firstPage == 1 && lastPage == Integer.MAX_VALUE)
+      {
+         try
+         {
+            key = cache.getKey(source, controller.getExtractionSettings());
+         }
+         catch(final IOException iox)
+         {
+            // the PDF cannot be read; the error is reported when it is ripped.
+         }
+         if(key != null)
+         {
+            final GridRipperFileResult cached = cache.get(key);
+            if(cached != null)
+            {
+               return cached;
+            }
+         }
+      }
+      
+      final GridRipperFileResult result = new GridRipperFileResult();
+      try
+      {
+         final GridRipperPdfReader r = passOn != null ? passOn : new GridRipperPdfReader(mode, controller, result);
+         r.setFileNumber(fileNumber);
+         r.setStartPage(firstPage);
+         r.setEndPage(lastPage);
+         reader = r;
+         try
+         {
+            r.processFile(source);
+         }
+         finally
+         {
+            result.setPeakHeap(r.getPeakHeap());
+         }
+      }
+      catch(final IOException iox)
+      {
+         result.setError(iox);
+      }
+      finally
+      {
+         reader = null;
+      }
+      if(key != null && result.getError() == null)
+      {
+         cache.put(key, result);
+      }
+      return result;
+   }
+   
+   /**
+    * run this task on one of the pool's threads
+    * 
+    * @return this task
+    */
+   GridRipperRipTask start(final ExecutorService pool)
+   {
+      future = pool.submit(this);
+      return this;
+   }
+   
+   /**
+    * wait for the task (once it has been started) to finish
+    * 
+    * @param nanos
+    *           the longest time to wait, or Long.MAX_VALUE to wait until it is
+    *           done
+    * @return the result of call or, if the PDF was written off, a result that
+    *         holds only the reason
+    */
+   GridRipperFileResult get(final long nanos) throws InterruptedException, ExecutionException, TimeoutException
+   {
+      if(writtenOff != null)
+      {
+         return writtenOff;
+      }
+      return nanos == Long.MAX_VALUE ? future.get() : future.get(nanos, TimeUnit.NANOSECONDS);
+   }
+   
+   /**
+    * @return how long (in nanoseconds) until the PDF runs out of time (see
+    *         GridRipperPdfReader.getTimeLeft), or Long.MAX_VALUE if it is not
+    *         being ripped
+    */
+   long getTimeLeft()
+   {
+      final GridRipperPdfReader r = reader;
+      return r == null || writtenOff != null ? Long.MAX_VALUE : r.getTimeLeft();
+   }
+   
+   /**
+    * write the PDF off (see GridRipperPdfReader.writeOff) if it is being
+    * ripped and has run out of time, and interrupt its thread. The thread is
+    * left to finish (or not) on its own.
+    * 
+    * @return true if the PDF was written off, and its thread left behind
+    */
+   boolean writeOff()
+   {
+      final GridRipperPdfReader r = reader;
+      if(r == null || writtenOff != null)
+      {
+         return false;
+      }
+      final GridRipperSkipException reason = r.writeOff();
+      // a task that finished in the meantime has passed everything on.
+      if(reason == null || !future.cancel(true))
+      {
+         return false;
+      }
+      writtenOff = new GridRipperFileResult();
+      writtenOff.setError(reason);
+      return true;
+   }
+   
+   private final GridRipperSource source;
+   private final int fileNumber;
+   private final int mode;
+   private final GridRipperController controller;
+   private final int firstPage;
+   private final int lastPage;
+   /**
+    * the reader that passes the pages on, or null to hold them in the result
+    */
+   private final GridRipperPdfReader passOn;
+   /**
+    * the reader while the PDF is being ripped
+    */
+   private volatile GridRipperPdfReader reader = null;
+   private Future<GridRipperFileResult> future = null;
+   private GridRipperFileResult writtenOff = null;
+}
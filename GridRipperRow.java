@@ -1,8 +1,8 @@
-import java.util.ArrayList;
-
-import org.apache.pdfbox.text.TextPosition;
-
 /**
+ * one row ripped from a PDF, with the same values as the columns of the output
+ * files (see GridRipperController.getColumnNames). A row cannot be changed, so
+ * it can be handed to other threads freely.
+ * 
  * Copyright 2017-2018 Michael A. Levy
  * 
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
@@ -20,127 +20,121 @@ import org.apache.pdfbox.text.TextPosition;
  * @author Michael
  *
  */
-class GridRipperRow implements Comparable<GridRipperRow>
+public final class GridRipperRow
 {
-   GridRipperRow(final TextPosition tp)
+   GridRipperRow(final int rowId, final int fileNumber, final String filePath, final String fileName,
+         final int pdfPage, final int totalPage, final float yStart, final float ySmooth, final float xStart,
+         final float xEnd, final float fontSize, final int rotation, final String content)
    {
-      y_start = tp.getY();
-      x_start = tp.getX();
-      x_end = tp.getEndX();
-      font_size = tp.getFontSize();
-      rotation = (int) (tp.getDir() + 0.1f);
-      content = tp.getUnicode();
+      this.rowId = rowId;
+      this.fileNumber = fileNumber;
+      this.filePath = filePath;
+      this.fileName = fileName;
+      this.pdfPage = pdfPage;
+      this.totalPage = totalPage;
+      this.yStart = yStart;
+      this.ySmooth = ySmooth;
+      this.xStart = xStart;
+      this.xEnd = xEnd;
+      this.fontSize = fontSize;
+      this.rotation = rotation;
+      this.content = content;
    }
    
-   GridRipperRow(final ArrayList<TextPosition> ttpp)
+   /**
+    * @return the row_id: the rows of a PDF are numbered from 0
+    */
+   public int getRowId()
    {
-      float ys = Float.MAX_VALUE;
-      float xs = Float.MAX_VALUE;
-      float xe = Float.MIN_VALUE;
-      final StringBuilder s = new StringBuilder();
-      
-      for(final TextPosition tp : ttpp)
-      {
-         if(ys > tp.getY())
-         {
-            ys = tp.getY();
-         }
-         if(xs > tp.getX())
-         {
-            xs = tp.getX();
-         }
-         if(xe < tp.getEndX())
-         {
-            xe = tp.getEndX();
-         }
-         s.append(tp.getUnicode());
-      }
-      
-      y_start = ys;
-      x_start = xs;
-      x_end = xe;
-      font_size = ttpp.get(0).getFontSize();
-      rotation = (int) (ttpp.get(0).getDir() + 0.1f);
-      content = s.toString();
+      return rowId;
    }
    
-   public int compareTo(final GridRipperRow that)
+   public int getFileNumber()
    {
-      if(this == that)
-      {
-         return 0;
-      }
-      if(this.y_smooth == that.y_smooth)
-      {
-         if(this.y_start == that.y_start)
-         {
-            if(this.x_start == that.x_start)
-            {
-               if(this.x_end == that.x_end)
-               {
-                  if(this.font_size == that.font_size)
-                  {
-                     if(this.rotation == that.rotation)
-                     {
-                        return this.content.compareTo(that.content);
-                     }
-                     else
-                     {
-                        return this.rotation < that.rotation ? -1 : 1;
-                     }
-                     
-                  }
-                  else
-                  {
-                     return this.font_size < that.font_size ? -1 : 1;
-                  }
-                  
-               }
-               else
-               {
-                  return this.x_end < that.x_end ? -1 : 1;
-               }
-            }
-            else
-            {
-               return this.x_start < that.x_start ? -1 : 1;
-            }
-         }
-         else
-         {
-            return this.y_start < that.y_start ? -1 : 1;
-         }
-      }
-      else
-      {
-         return this.y_smooth < that.y_smooth ? -1 : 1;
-      }
+      return fileNumber;
    }
    
-   void smooth(final GridRipperRow above)
+   /**
+    * @return the directory (or other parent) of the PDF
+    */
+   public String getFilePath()
    {
-      if(above == null)
-      {
-         this.y_smooth = this.y_start;
-      }
-      else if(this.y_start - above.y_smooth < _SMOOTH_FACTOR)
-      {
-         this.y_smooth = above.y_smooth;
-      }
-      else
-      {
-         this.y_smooth = this.y_start;
-      }
+      return filePath;
    }
    
-   final float y_start;
-   float y_smooth = _NO_SMOOTH;
-   final float x_start;
-   final float x_end;
-   final float font_size;
-   final int rotation;
-   final String content;
+   public String getFileName()
+   {
+      return fileName;
+   }
+   
+   /**
+    * @return the page of the PDF that the row is on (the first page is 1)
+    */
+   public int getPdfPage()
+   {
+      return pdfPage;
+   }
+   
+   public int getTotalPage()
+   {
+      return totalPage;
+   }
+   
+   public float getYStart()
+   {
+      return yStart;
+   }
+   
+   /**
+    * @return the y_start of the first entry of the line that this row is on
+    */
+   public float getYSmooth()
+   {
+      return ySmooth;
+   }
+   
+   public float getXStart()
+   {
+      return xStart;
+   }
+   
+   public float getXEnd()
+   {
+      return xEnd;
+   }
+   
+   public float getFontSize()
+   {
+      return fontSize;
+   }
+   
+   public int getRotation()
+   {
+      return rotation;
+   }
+   
+   public String getContent()
+   {
+      return content;
+   }
+   
+   public String toString()
+   {
+      return rowId + "\t" + fileNumber + "\t" + pdfPage + "\t" + yStart + "\t" + ySmooth + "\t" + xStart + "\t" + xEnd
+            + "\t" + fontSize + "\t" + rotation + "\t" + content;
+   }
    
-   private static final float _NO_SMOOTH = -999999.0f;
-   private static final float _SMOOTH_FACTOR = 2.0f;
+   private final int rowId;
+   private final int fileNumber;
+   private final String filePath;
+   private final String fileName;
+   private final int pdfPage;
+   private final int totalPage;
+   private final float yStart;
+   private final float ySmooth;
+   private final float xStart;
+   private final float xEnd;
+   private final float fontSize;
+   private final int rotation;
+   private final String content;
 }
@@ -0,0 +1,254 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * rips a PDF for a program that embeds GridRipper, handing out its rows one at
+ * a time (or as a Stream, see stream) instead of writing them to a file. The
+ * rows are the same as in an output file of a run with just this PDF.
+ * 
+ * The PDF is ripped lazily, in a single pass, on a reading thread that is
+ * started when the first row is asked for. The reading thread hands each page
+ * over to the iterator, and waits until the iterator takes it, so it reads at
+ * most one page ahead of the rows that have been handed out: a program that
+ * stops part of the way through never parses the rest of the PDF. The PDF
+ * stays open until the last row has been handed out, or until the iterator
+ * (or its stream) is closed, which should be done by a program that stops
+ * early (it stops the reading thread). An iterator is not thread-safe, but
+ * the rows are immutable.
+ * 
+ * An IOException while the PDF is read is thrown by hasNext (and next) as an
+ * UncheckedIOException, since Iterator cannot throw checked exceptions.
+ * 
+ * Like the rest of GridRipper, this class is in the default package, and Java
+ * does not let a class in a named package import a class in the default
+ * package. A program in a named package (such as an ingestion service) has to
+ * load it by reflection, or call it from a class of its own in the default
+ * package.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+public class GridRipperRowIterator implements Iterator<GridRipperRow>, Closeable
+{
+   /**
+    * @param pdf
+    *           the PDF to rip
+    * @param mode
+    *           GridRipperGUI._MODE_PHRASES, _MODE_WORDS or _MODE_CHARACTERS
+    * @throws IOException
+    *            if the PDF cannot be loaded
+    */
+   public GridRipperRowIterator(final File pdf, final int mode) throws IOException
+   {
+      this(new GridRipperFileSource(pdf), mode);
+   }
+   
+   /**
+    * @param pdf
+    *           the PDF to rip, which is read into memory (the stream is not
+    *           closed)
+    * @param name
+    *           the name of the PDF, for the file_name of the rows (the
+    *           file_path is empty)
+    * @param mode
+    *           GridRipperGUI._MODE_PHRASES, _MODE_WORDS or _MODE_CHARACTERS
+    * @throws IOException
+    *            if the PDF cannot be read or loaded
+    */
+   public GridRipperRowIterator(final InputStream pdf, final String name, final int mode) throws IOException
+   {
+      this(new GridRipperBytesSource("", name, IOUtils.toByteArray(pdf)), mode);
+   }
+   
+   GridRipperRowIterator(final GridRipperSource source, final int mode) throws IOException
+   {
+      rows = new GridRipperRowWriter();
+      controller = new GridRipperController(new GridRipperSource[] { source }, rows, mode);
+      reader = new GridRipperPdfReader(mode, controller);
+      reader.setFileNumber(1);
+      rows.open(controller);
+      controller.startFile();
+      doc = source.load(MemoryUsageSetting.setupMainMemoryOnly());
+      controller.setPdfPages(doc.getNumberOfPages());
+   }
+   
+   /**
+    * @return true if there is another row; this waits for the next page with
+    *         rows to be read if the rows that were read are all handed out
+    */
+   public boolean hasNext()
+   {
+      while((page == null || next == page.size()) && doc != null)
+      {
+         if(readingThread == null)
+         {
+            startReading();
+         }
+         page = rows.take();
+         next = 0;
+         if(page == null)
+         {
+            closeQuietly();
+            if(error != null)
+            {
+               throw new UncheckedIOException(error);
+            }
+         }
+      }
+      return page != null && next < page.size();
+   }
+   
+   public GridRipperRow next()
+   {
+      if(!hasNext())
+      {
+         throw new NoSuchElementException();
+      }
+      return page.get(next++);
+   }
+   
+   /**
+    * @return the rest of the rows, as a sequential, ordered stream that pulls
+    *         rows from this iterator as they are needed. Closing the stream
+    *         closes this iterator.
+    */
+   public Stream<GridRipperRow> stream()
+   {
+      final Spliterator<GridRipperRow> rest = Spliterators.spliteratorUnknownSize(this,
+            Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+      return StreamSupport.stream(rest, false).onClose(new Runnable()
+      {
+         public void run()
+         {
+            try
+            {
+               close();
+            }
+            catch(final IOException iox)
+            {
+               throw new UncheckedIOException(iox);
+            }
+         }
+      });
+   }
+   
+   /**
+    * close the PDF; any rows that have not been handed out are dropped. If the
+    * reading thread has not reached the end of the PDF, it is stopped first.
+    */
+   public void close() throws IOException
+   {
+      if(doc == null)
+      {
+         return;
+      }
+      final PDDocument d = doc;
+      doc = null;
+      page = null;
+      if(readingThread != null)
+      {
+         // the reader stops at the next operator of the page it is reading;
+         // until it does, the pages that it hands over are dropped.
+         controller.cancel();
+         while(readingThread.isAlive())
+         {
+            rows.discard();
+         }
+      }
+      rows.close();
+      d.close();
+   }
+   
+   /**
+    * start the thread that reads the PDF, in a single pass, and hands its
+    * pages over to rows
+    */
+   private void startReading()
+   {
+      final PDDocument d = doc;
+      readingThread = new Thread(new Runnable()
+      {
+         public void run()
+         {
+            try
+            {
+               reader.processDocument(d);
+            }
+            catch(final IOException iox)
+            {
+               error = iox;
+            }
+            catch(final RuntimeException rex)
+            {
+               error = new IOException(rex);
+            }
+            finally
+            {
+               rows.end();
+            }
+         }
+      }, "GridRipper row iterator");
+      readingThread.setDaemon(true);
+      readingThread.start();
+   }
+   
+   private void closeQuietly()
+   {
+      try
+      {
+         close();
+      }
+      catch(final IOException iox)
+      {
+         iox.printStackTrace();
+      }
+   }
+   
+   private final GridRipperRowWriter rows;
+   private final GridRipperController controller;
+   private final GridRipperPdfReader reader;
+   /**
+    * the PDF, or null once it is closed
+    */
+   private PDDocument doc;
+   private Thread readingThread = null;
+   /**
+    * the error that stopped the reading thread, if there was one; it is set
+    * before the end of the PDF is handed over
+    */
+   private volatile IOException error = null;
+   /**
+    * the rows of the page that is being handed out, and the next one to hand
+    * out
+    */
+   private ArrayList<GridRipperRow> page = null;
+   private int next = 0;
+}
@@ -0,0 +1,221 @@
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the writer behind a GridRipperRowIterator: rather than writing each page to
+ * a file, it turns the rows of the page into GridRipperRows and hands them
+ * over to the iterator. The pages are written by the iterator's reading
+ * thread, which waits (in a SynchronousQueue) until the iterator takes each
+ * page. It is only given whole pages (see GridRipperPageWriter), so the
+ * cell-by-cell methods are not used.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+class GridRipperRowWriter implements GridRipperPageWriter
+{
+   public void open(final GridRipperController c)
+   {
+      status = GridRipperWriter._RUN_STATUS_RUNNING;
+   }
+   
+   /**
+    * hand over a row for every entry on the page, with every column (whatever
+    * the controller's permissions are). Pages without rows are not handed
+    * over.
+    */
+   public void writePage(final GridRipperPage page, final int[] columns, final GridRipperController c,
+         final int firstId)
+   {
+      if(page.size() == 0)
+      {
+         return;
+      }
+      final ArrayList<GridRipperRow> rows = new ArrayList<GridRipperRow>(page.size());
+      final int fileNumber = c.getFileNumber();
+      final String filePath = c.getFilePath();
+      final String fileName = c.getFileName();
+      final int pdfPage = c.getPdfPage() + 1;
+      final int totalPage = c.getPid() + 1;
+      final char[] chars = page.getChars();
+      for(int j = 0; j < page.size(); j++)
+      {
+         final int r = page.getRow(j);
+         rows.add(new GridRipperRow(firstId + j, fileNumber, filePath, fileName, pdfPage, totalPage,
+               page.getYStart(r), page.getYSmooth(r), page.getXStart(r), page.getXEnd(r), page.getFontSize(r),
+               page.getRotation(r), new String(chars, page.getContentStart(r), page.getContentLength(r))));
+      }
+      handOver(rows);
+   }
+   
+   /**
+    * hand over the end of the PDF, once every page has been handed over (or
+    * the PDF cannot be read any further)
+    */
+   void end()
+   {
+      handOver(_END);
+   }
+   
+   /**
+    * wait for the iterator to take the rows of a page
+    */
+   private void handOver(final ArrayList<GridRipperRow> rows)
+   {
+      try
+      {
+         pages.put(rows);
+      }
+      catch(final InterruptedException iex)
+      {
+         Thread.currentThread().interrupt();
+         declareFatalError();
+      }
+   }
+   
+   /**
+    * @return the rows of the next page that has rows, or null at the end of
+    *         the PDF; this waits for the page to be read
+    */
+   ArrayList<GridRipperRow> take()
+   {
+      final ArrayList<GridRipperRow> rows;
+      try
+      {
+         rows = pages.take();
+      }
+      catch(final InterruptedException iex)
+      {
+         Thread.currentThread().interrupt();
+         throw new UncheckedIOException(new InterruptedIOException("Interrupted while waiting for a page"));
+      }
+      return rows == _END ? null : rows;
+   }
+   
+   /**
+    * take (and drop) a page, if one is handed over within a short time, so
+    * that the reading thread does not wait for a page to be taken when the
+    * iterator is closed early
+    */
+   void discard()
+   {
+      try
+      {
+         pages.poll(_DISCARD_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+      }
+      catch(final InterruptedException iex)
+      {
+         Thread.currentThread().interrupt();
+      }
+   }
+   
+   public void writeBlank()
+   {
+      // not used.
+   }
+   
+   public void writeText(final String s)
+   {
+      // not used.
+   }
+   
+   public void writeInt(final int i)
+   {
+      // not used.
+   }
+   
+   public void writeFloat(final float f)
+   {
+      // not used.
+   }
+   
+   public void writeDate(final long d)
+   {
+      // not used.
+   }
+   
+   public void startRow()
+   {
+      // not used.
+   }
+   
+   public void endRow()
+   {
+      // not used.
+   }
+   
+   public void startPage()
+   {
+      // no action necessary.
+   }
+   
+   public void endPage()
+   {
+      // no action necessary.
+   }
+   
+   public void startPDF()
+   {
+      // no action necessary.
+   }
+   
+   public void endPDF()
+   {
+      // no action necessary.
+   }
+   
+   public void close()
+   {
+      status = GridRipperWriter._RUN_STATUS_DONE;
+   }
+   
+   public int getRunStatus()
+   {
+      return status;
+   }
+   
+   public int getErrorStatus()
+   {
+      return errors;
+   }
+   
+   public void declareError()
+   {
+      if(errors == GridRipperWriter._ERROR_STATUS_NO_ERROR)
+      {
+         errors = GridRipperWriter._ERROR_STATUS_ERROR;
+      }
+   }
+   
+   public void declareFatalError()
+   {
+      errors = GridRipperWriter._ERROR_STATUS_CRASH;
+   }
+   
+   private final SynchronousQueue<ArrayList<GridRipperRow>> pages = new SynchronousQueue<ArrayList<GridRipperRow>>();
+   private volatile int errors = GridRipperWriter._ERROR_STATUS_NO_ERROR;
+   private volatile int status = GridRipperWriter._RUN_STATUS_NOT_STARTED;
+   
+   /**
+    * handed over after the last page
+    */
+   private static final ArrayList<GridRipperRow> _END = new ArrayList<GridRipperRow>(0);
+   private static final long _DISCARD_WAIT_MILLIS = 10;
+}
@@ -0,0 +1,50 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * a JDK Flight Recorder event for the segmentation of a run of text (one call
+ * of GridRipperPdfReader.writeString) into phrases, words or characters. There
+ * are many of these on each page, so (unless the recording's settings lower
+ * the threshold) only the ones that take at least a millisecond are recorded.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+@Name("GridRipper.Segment")
+@Label("Segment Text")
+@Category("GridRipper")
+@Description("A run of text being split into phrases, words or characters")
+@Threshold("1 ms")
+class GridRipperSegmentEvent extends Event
+{
+   @Label("File Number")
+   int fileNumber;
+   
+   @Label("Page")
+   @Description("The page of the PDF, counting from 1")
+   int page;
+   
+   @Label("Glyphs")
+   int glyphs;
+   
+   @Label("Rows")
+   int rows;
+}
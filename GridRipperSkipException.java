@@ -0,0 +1,49 @@
+import java.io.IOException;
+
+/**
+ * thrown by the PDF reader when it abandons a PDF part of the way through:
+ * because the PDF (or one of its pages) took longer than the controller's time
+ * limit, or because the run was cancelled. The controller does not write any
+ * of the rows of a skipped PDF that is held until it is done (see
+ * GridRipperController.setFileTimeLimit), and records the reason (see
+ * GridRipperController.getSkipReason).
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+class GridRipperSkipException extends IOException
+{
+   /**
+    * @param path
+    *           the logical path of the PDF
+    * @param reason
+    *           why it was skipped, such as "the run was cancelled"
+    */
+   GridRipperSkipException(final String path, final String reason)
+   {
+      super("Skipped " + path + ": " + reason);
+      this.reason = reason;
+   }
+   
+   String getReason()
+   {
+      return reason;
+   }
+   
+   private final String reason;
+   private static final long serialVersionUID = 1L;
+}
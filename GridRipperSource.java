@@ -0,0 +1,66 @@
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * a PDF to be ripped. This may be a file on disk, but it may also be an entry
+ * in a zip archive, or a PDF that is already in memory, so a source is known by
+ * a logical name, which is written in the file_path and file_name columns.
+ * 
+ * A source can be loaded more than once, and from more than one thread at a
+ * time (when a PDF is split into ranges of pages that are ripped at the same
+ * time).
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+interface GridRipperSource
+{
+   /**
+    * @return the full logical name of the PDF, such as /a/b.pdf or
+    *         /a/c.zip!/d/e.pdf, which is different for every source in a run
+    */
+   public String getPath();
+   
+   /**
+    * @return the logical name of the directory that the PDF is in (the
+    *         file_path column), such as /a or /a/c.zip!/d; this is never null,
+    *         but may be empty
+    */
+   public String getParent();
+   
+   /**
+    * @return the name of the PDF (the file_name column), such as b.pdf
+    */
+   public String getName();
+   
+   /**
+    * @param memory
+    *           how much of the PDF's streams can be held in memory (see
+    *           GridRipperController.setMemoryBudget)
+    * @return the PDF, which the caller must close
+    */
+   public PDDocument load(final MemoryUsageSetting memory) throws IOException;
+   
+   /**
+    * @return the bytes of the PDF, from the start (to hash them for a
+    *         GridRipperExtractionCache)
+    */
+   public InputStream openStream() throws IOException;
+}
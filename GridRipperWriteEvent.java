@@ -0,0 +1,44 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * a JDK Flight Recorder event for the writing of a page: the encoding of its
+ * rows by the writer, and any time spent waiting for the output file to be
+ * written to the disk.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+@Name("GridRipper.Write")
+@Label("Write Page")
+@Category("GridRipper")
+@Description("The rows of a page being encoded and written to the output")
+class GridRipperWriteEvent extends Event
+{
+   @Label("File Number")
+   int fileNumber;
+   
+   @Label("Page")
+   @Description("The page of the PDF, counting from 1")
+   int page;
+   
+   @Label("Rows")
+   int rows;
+}
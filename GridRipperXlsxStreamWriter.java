@@ -0,0 +1,560 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.TimeZone;
+import java.util.zip.Deflater;
+
+/**
+ * This class outputs the information to an Excel workbook (.xlsx). Like
+ * GridRipperOdsStreamWriter, it does not build the spreadsheet in memory: each
+ * worksheet is written as a stream of XML, with the text in each cell written
+ * inline (so there is no shared strings table to hold in memory), and the
+ * small parts of the workbook that list the worksheets are written at the end.
+ * 
+ * A worksheet can only have 1,048,576 rows, so when a worksheet is full a new
+ * one is started, and the column names are repeated as its first row.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+class GridRipperXlsxStreamWriter implements GridRipperPageWriter
+{
+   GridRipperXlsxStreamWriter(final File target)
+   {
+      this(target, Deflater.DEFAULT_COMPRESSION, Runtime.getRuntime().availableProcessors());
+   }
+   
+   /**
+    * @param target
+    *           the .xlsx file to create
+    * @param level
+    *           the compression level, from 0 (none, fastest) to 9 (smallest
+    *           file, slowest), or Deflater.DEFAULT_COMPRESSION
+    * @param threads
+    *           the number of threads that compress the worksheets
+    */
+   GridRipperXlsxStreamWriter(final File target, final int level, final int threads)
+   {
+      this.target = target;
+      this.level = level;
+      this.threads = threads;
+   }
+   
+   public void open(final GridRipperController c)
+   {
+      runStatus = GridRipperWriter._RUN_STATUS_RUNNING;
+      controller = c;
+      try
+      {
+         file = new GridRipperAsyncFileOutput(target);
+         out = new GridRipperZipOutputStream(file, level, threads);
+         buffer = new GridRipperOutputBuffer(out);
+         newSheet();
+      }
+      catch(final IOException iox)
+      {
+         iox.printStackTrace();
+         errorStatus = GridRipperWriter._ERROR_STATUS_CRASH;
+      }
+   }
+   
+   /**
+    * end the current worksheet (if there is one) and start the next one. Every
+    * worksheet after the first starts with the names of the columns.
+    */
+   private void newSheet() throws IOException
+   {
+      if(sheetCount != 0)
+      {
+         buffer.write(_SHEET_END);
+         buffer.drain();
+      }
+      sheetCount++;
+      out.putNextEntry("xl/worksheets/sheet" + sheetCount + ".xml");
+      buffer.write(_SHEET_START);
+      rowsInSheet = 0;
+      
+      if(sheetCount != 1)
+      {
+         buffer.write(_ROW_START);
+         for(int i = 0; i < controller.permissionsCount; i++)
+         {
+            if(controller.getPermission(i))
+            {
+               writeString(controller.getColumnName(i));
+            }
+         }
+         buffer.write(_ROW_END);
+         rowsInSheet++;
+      }
+   }
+   
+   public void writeBlank()
+   {
+      if(errorStatus == GridRipperWriter._ERROR_STATUS_CRASH)
+      {
+         return;
+      }
+      try
+      {
+         buffer.write(_CELL_BLANK);
+      }
+      catch(final IOException iox)
+      {
+         iox.printStackTrace();
+         errorStatus = GridRipperWriter._ERROR_STATUS_CRASH;
+      }
+   }
+   
+   public void writeText(final String s)
+   {
+      if(errorStatus == GridRipperWriter._ERROR_STATUS_CRASH)
+      {
+         return;
+      }
+      try
+      {
+         writeString(s);
+      }
+      catch(final IOException iox)
+      {
+         iox.printStackTrace();
+         errorStatus = GridRipperWriter._ERROR_STATUS_CRASH;
+      }
+   }
+   
+   public void writeInt(final int i)
+   {
+      if(errorStatus == GridRipperWriter._ERROR_STATUS_CRASH)
+      {
+         return;
+      }
+      try
+      {
+         writeNumber(i);
+      }
+      catch(final IOException iox)
+      {
+         iox.printStackTrace();
+         errorStatus = GridRipperWriter._ERROR_STATUS_CRASH;
+      }
+   }
+   
+   public void writeFloat(final float f)
+   {
+      if(errorStatus == GridRipperWriter._ERROR_STATUS_CRASH)
+      {
+         return;
+      }
+      try
+      {
+         writeNumber(f);
+      }
+      catch(final IOException iox)
+      {
+         iox.printStackTrace();
+         errorStatus = GridRipperWriter._ERROR_STATUS_CRASH;
+      }
+   }
+   
+   /**
+    * the date is written as an Excel serial date (the number of days since
+    * 1900), in local time, with a date and time format
+    */
+   public void writeDate(final long d)
+   {
+      if(errorStatus == GridRipperWriter._ERROR_STATUS_CRASH)
+      {
+         return;
+      }
+      try
+      {
+         final double days = (d + TimeZone.getDefault().getOffset(d)) / 86400000.0 + _EXCEL_EPOCH;
+         buffer.write(_CELL_DATE_BEFORE);
+         buffer.writeText(Double.toString(days));
+         buffer.write(_CELL_NUMBER_AFTER);
+      }
+      catch(final IOException iox)
+      {
+         iox.printStackTrace();
+         errorStatus = GridRipperWriter._ERROR_STATUS_CRASH;
+      }
+   }
+   
+   private void writeString(final String s) throws IOException
+   {
+      buffer.write(_CELL_STRING_BEFORE);
+      buffer.writeXml(s);
+      buffer.write(_CELL_STRING_AFTER);
+   }
+   
+   private void writeString(final char[] chars, final int start, final int length) throws IOException
+   {
+      buffer.write(_CELL_STRING_BEFORE);
+      buffer.writeXml(chars, start, length);
+      buffer.write(_CELL_STRING_AFTER);
+   }
+   
+   private void writeNumber(final int i) throws IOException
+   {
+      buffer.write(_CELL_NUMBER_BEFORE);
+      buffer.writeInt(i);
+      buffer.write(_CELL_NUMBER_AFTER);
+   }
+   
+   private void writeNumber(final float f) throws IOException
+   {
+      buffer.write(_CELL_NUMBER_BEFORE);
+      buffer.writeFloat(f);
+      buffer.write(_CELL_NUMBER_AFTER);
+   }
+   
+   public void writePage(final GridRipperPage page, final int[] columns, final GridRipperController c,
+         final int firstId)
+   {
+      if(errorStatus == GridRipperWriter._ERROR_STATUS_CRASH)
+      {
+         return;
+      }
+      final int fileNumber = c.getFileNumber();
+      final String filePath = c.getFilePath();
+      final String fileName = c.getFileName();
+      final int pdfPage = c.getPdfPage() + 1;
+      final int totalPage = c.getPid() + 1;
+      final char[] chars = page.getChars();
+      try
+      {
+         for(int j = 0; j < page.size(); j++)
+         {
+            final int r = page.getRow(j);
+            startSheetRow();
+            for(final int column : columns)
+            {
+               switch(column)
+               {
+                  case _COLUMN_ROW_ID:
+                     writeNumber(firstId + j);
+                     break;
+                  case _COLUMN_FILE_NUMBER:
+                     writeNumber(fileNumber);
+                     break;
+                  case _COLUMN_FILE_PATH:
+                     writeString(filePath);
+                     break;
+                  case _COLUMN_FILE_NAME:
+                     writeString(fileName);
+                     break;
+                  case _COLUMN_PDF_PAGE:
+                     writeNumber(pdfPage);
+                     break;
+                  case _COLUMN_TOTAL_PAGE:
+                     writeNumber(totalPage);
+                     break;
+                  case _COLUMN_Y_START:
+                     writeNumber(page.getYStart(r));
+                     break;
+                  case _COLUMN_Y_SMOOTH:
+                     writeNumber(page.getYSmooth(r));
+                     break;
+                  case _COLUMN_X_START:
+                     writeNumber(page.getXStart(r));
+                     break;
+                  case _COLUMN_X_END:
+                     writeNumber(page.getXEnd(r));
+                     break;
+                  case _COLUMN_FONT_SIZE:
+                     writeNumber(page.getFontSize(r));
+                     break;
+                  case _COLUMN_ROTATION:
+                     writeNumber(page.getRotation(r));
+                     break;
+                  case _COLUMN_CONTENT:
+                     writeString(chars, page.getContentStart(r), page.getContentLength(r));
+                     break;
+                  default:
+                     break;
+               }
+            }
+            buffer.write(_ROW_END);
+         }
+      }
+      catch(final IOException iox)
+      {
+         iox.printStackTrace();
+         errorStatus = GridRipperWriter._ERROR_STATUS_CRASH;
+      }
+   }
+   
+   /**
+    * start a row, on a new worksheet if this one is full
+    */
+   private void startSheetRow() throws IOException
+   {
+      if(rowsInSheet == _MAX_ROWS)
+      {
+         newSheet();
+      }
+      buffer.write(_ROW_START);
+      rowsInSheet++;
+   }
+   
+   public void startRow()
+   {
+      if(errorStatus == GridRipperWriter._ERROR_STATUS_CRASH)
+      {
+         return;
+      }
+      try
+      {
+         startSheetRow();
+      }
+      catch(final IOException iox)
+      {
+         iox.printStackTrace();
+         errorStatus = GridRipperWriter._ERROR_STATUS_CRASH;
+      }
+   }
+   
+   public void endRow()
+   {
+      if(errorStatus == GridRipperWriter._ERROR_STATUS_CRASH)
+      {
+         return;
+      }
+      try
+      {
+         buffer.write(_ROW_END);
+      }
+      catch(final IOException iox)
+      {
+         iox.printStackTrace();
+         errorStatus = GridRipperWriter._ERROR_STATUS_CRASH;
+      }
+   }
+   
+   public void startPage()
+   {
+      // no action is required.
+   }
+   
+   public void endPage()
+   {
+      // no action is required.
+   }
+   
+   public void startPDF()
+   {
+      // no action is required.
+   }
+   
+   public void endPDF()
+   {
+      // no action is required.
+   }
+   
+   /**
+    * end the last worksheet, then write the parts of the workbook that list
+    * the worksheets. After a crash, the file is left incomplete, but the
+    * compression threads and the file's writer thread are still stopped, and
+    * the file is still closed.
+    */
+   public void close()
+   {
+      try
+      {
+         if(errorStatus == GridRipperWriter._ERROR_STATUS_CRASH || out == null)
+         {
+            return;
+         }
+         buffer.write(_SHEET_END);
+         buffer.drain();
+         
+         final StringBuilder types = new StringBuilder(_CONTENT_TYPES_START);
+         final StringBuilder sheets = new StringBuilder(_WORKBOOK_START);
+         final StringBuilder rels = new StringBuilder(_WORKBOOK_RELS_START);
+         for(int i = 1; i <= sheetCount; i++)
+         {
+            types.append("<Override PartName=\"/xl/worksheets/sheet").append(i).append(".xml\" ContentType=\"")
+                  .append(_SPREADSHEETML).append("worksheet+xml\"/>");
+            sheets.append("<sheet name=\"").append(sheetName(i)).append("\" sheetId=\"").append(i)
+                  .append("\" r:id=\"rId").append(i).append("\"/>");
+            rels.append("<Relationship Id=\"rId").append(i).append("\" Type=\"").append(_RELATIONSHIPS)
+                  .append("worksheet\" Target=\"worksheets/sheet").append(i).append(".xml\"/>");
+         }
+         types.append(_CONTENT_TYPES_END);
+         sheets.append(_WORKBOOK_END);
+         rels.append("<Relationship Id=\"rId").append(sheetCount + 1).append("\" Type=\"").append(_RELATIONSHIPS)
+               .append("styles\" Target=\"styles.xml\"/>");
+         rels.append(_RELS_END);
+         
+         writeEntry("[Content_Types].xml", types.toString());
+         writeEntry("_rels/.rels", _ROOT_RELS);
+         writeEntry("xl/workbook.xml", sheets.toString());
+         writeEntry("xl/_rels/workbook.xml.rels", rels.toString());
+         writeEntry("xl/styles.xml", _STYLES);
+         out.close();
+      }
+      catch(final IOException iox)
+      {
+         iox.printStackTrace();
+         errorStatus = GridRipperWriter._ERROR_STATUS_CRASH;
+      }
+      finally
+      {
+         abort();
+         runStatus = GridRipperWriter._RUN_STATUS_DONE;
+      }
+   }
+   
+   /**
+    * release the zip stream and the file, if they have not been closed
+    */
+   private void abort()
+   {
+      try
+      {
+         if(out != null)
+         {
+            out.abort();
+         }
+         else if(file != null)
+         {
+            file.close();
+         }
+      }
+      catch(final IOException iox)
+      {
+         iox.printStackTrace();
+      }
+   }
+   
+   /**
+    * @return the name of a worksheet: its number, with at least four digits
+    */
+   private static String sheetName(final int number)
+   {
+      final String s = _SHEET_NAME + number;
+      return s.substring(Math.min(_SHEET_NAME.length(), s.length() - _SHEET_NAME.length()));
+   }
+   
+   private void writeEntry(final String name, final String xml) throws IOException
+   {
+      out.putNextEntry(name);
+      buffer.writeText(xml);
+      buffer.drain();
+   }
+   
+   public int getRunStatus()
+   {
+      return runStatus;
+   }
+   
+   public int getErrorStatus()
+   {
+      return errorStatus;
+   }
+   
+   public void declareError()
+   {
+      if(errorStatus == GridRipperWriter._ERROR_STATUS_NO_ERROR)
+      {
+         errorStatus = GridRipperWriter._ERROR_STATUS_ERROR;
+      }
+   }
+   
+   public void declareFatalError()
+   {
+      errorStatus = GridRipperWriter._ERROR_STATUS_CRASH;
+   }
+   
+   private final File target;
+   private final int level;
+   private final int threads;
+   private GridRipperZipOutputStream out = null;
+   /**
+    * the file, which is written on a background thread
+    */
+   private GridRipperAsyncFileOutput file = null;
+   private GridRipperOutputBuffer buffer = null;
+   
+   private GridRipperController controller = null;
+   private int runStatus = GridRipperWriter._RUN_STATUS_NOT_STARTED;
+   private int errorStatus = GridRipperWriter._ERROR_STATUS_NO_ERROR;
+   
+   private int sheetCount = 0;
+   private int rowsInSheet = 0;
+   
+   /**
+    * the number of rows in an Excel worksheet
+    */
+   static final int _MAX_ROWS = 1048576;
+   
+   /**
+    * the serial number of 1970-01-01 in Excel's 1900 date system
+    */
+   private static final double _EXCEL_EPOCH = 25569.0;
+   
+   private static final String _SHEET_NAME = "0000";
+   
+   private static final byte[] _SHEET_START = ("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+         + "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>").getBytes();
+   private static final byte[] _SHEET_END = "</sheetData></worksheet>".getBytes();
+   private static final byte[] _ROW_START = "<row>".getBytes();
+   private static final byte[] _ROW_END = "</row>".getBytes();
+   private static final byte[] _CELL_BLANK = "<c/>".getBytes();
+   private static final byte[] _CELL_NUMBER_BEFORE = "<c><v>".getBytes();
+   private static final byte[] _CELL_NUMBER_AFTER = "</v></c>".getBytes();
+   private static final byte[] _CELL_DATE_BEFORE = "<c s=\"1\"><v>".getBytes();
+   private static final byte[] _CELL_STRING_BEFORE = "<c t=\"inlineStr\"><is><t xml:space=\"preserve\">".getBytes();
+   private static final byte[] _CELL_STRING_AFTER = "</t></is></c>".getBytes();
+   
+   private static final String _SPREADSHEETML = "application/vnd.openxmlformats-officedocument.spreadsheetml.";
+   private static final String _RELATIONSHIPS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships/";
+   private static final String _XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+   private static final String _CONTENT_TYPES_START = _XML_DECLARATION
+         + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+         + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+         + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+         + "<Override PartName=\"/xl/workbook.xml\" ContentType=\"" + _SPREADSHEETML + "sheet.main+xml\"/>"
+         + "<Override PartName=\"/xl/styles.xml\" ContentType=\"" + _SPREADSHEETML + "styles+xml\"/>";
+   private static final String _CONTENT_TYPES_END = "</Types>";
+   private static final String _ROOT_RELS = _XML_DECLARATION
+         + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+         + "<Relationship Id=\"rId1\" Type=\"" + _RELATIONSHIPS + "officeDocument\" Target=\"xl/workbook.xml\"/>"
+         + "</Relationships>";
+   private static final String _WORKBOOK_START = _XML_DECLARATION
+         + "<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" "
+         + "xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\"><sheets>";
+   private static final String _WORKBOOK_END = "</sheets></workbook>";
+   private static final String _WORKBOOK_RELS_START = _XML_DECLARATION
+         + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">";
+   private static final String _RELS_END = "</Relationships>";
+   /**
+    * the minimum styles: the default cell format (0) and a date and time format
+    * (1)
+    */
+   private static final String _STYLES = _XML_DECLARATION
+         + "<styleSheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+         + "<fonts count=\"1\"><font><sz val=\"11\"/><name val=\"Calibri\"/></font></fonts>"
+         + "<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill>"
+         + "<fill><patternFill patternType=\"gray125\"/></fill></fills>"
+         + "<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>"
+         + "<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>"
+         + "<cellXfs count=\"2\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>"
+         + "<xf numFmtId=\"22\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyNumberFormat=\"1\"/></cellXfs>"
+         + "<cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles>"
+         + "</styleSheet>";
+}
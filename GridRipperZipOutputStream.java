@@ -0,0 +1,345 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * writes a zip file, like java.util.zip.ZipOutputStream, except that each
+ * entry is compressed by a GridRipperParallelDeflater, so that a large entry
+ * (the content.xml of a large .ods file) is compressed on several threads.
+ * Every entry is DEFLATEd and written with a data descriptor (its CRC and sizes
+ * follow its data). Zip64 records are added when an entry or the file is too
+ * large for the original zip format.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+class GridRipperZipOutputStream extends OutputStream
+{
+   /**
+    * @param out
+    *           the stream to write the zip file to (it should be buffered)
+    * @param level
+    *           the compression level, 0-9 (or Deflater.DEFAULT_COMPRESSION)
+    * @param threads
+    *           the number of threads to compress on; 1 compresses on the thread
+    *           that writes
+    */
+   GridRipperZipOutputStream(final OutputStream out, final int level, final int threads)
+   {
+      this.out = out;
+      this.level = level;
+      this.threads = threads < 1 ? 1 : threads;
+      if(this.threads > 1)
+      {
+         pool = Executors.newFixedThreadPool(this.threads, new ThreadFactory()
+         {
+            public Thread newThread(final Runnable r)
+            {
+               final Thread t = new Thread(r, "GridRipper deflate");
+               t.setDaemon(true);
+               return t;
+            }
+         });
+      }
+      else
+      {
+         pool = null;
+      }
+      
+      final Calendar c = Calendar.getInstance();
+      dosTime = (Math.max(0, c.get(Calendar.YEAR) - 1980) << 25) | ((c.get(Calendar.MONTH) + 1) << 21)
+            | (c.get(Calendar.DAY_OF_MONTH) << 16) | (c.get(Calendar.HOUR_OF_DAY) << 11)
+            | (c.get(Calendar.MINUTE) << 5) | (c.get(Calendar.SECOND) >> 1);
+   }
+   
+   /**
+    * start a new entry (closing the current one, if there is one)
+    * 
+    * @param name
+    *           the name of the entry; names of directories end with "/"
+    */
+   void putNextEntry(final String name) throws IOException
+   {
+      closeEntry();
+      final byte[] n = name.getBytes(_UTF8);
+      entryNames.add(n);
+      entryOffsets.add(position);
+      
+      writeInt(_LOCAL_HEADER);
+      writeShort(_VERSION);
+      writeShort(_FLAGS);
+      writeShort(_DEFLATED);
+      writeInt(dosTime);
+      writeInt(0);
+      writeInt(0);
+      writeInt(0);
+      writeShort(n.length);
+      writeShort(0);
+      writeBytes(n);
+      
+      entry = new GridRipperParallelDeflater(new OutputStream()
+      {
+         public void write(final int b) throws IOException
+         {
+            out.write(b);
+            position++;
+         }
+         
+         public void write(final byte[] b, final int offset, final int length) throws IOException
+         {
+            out.write(b, offset, length);
+            position += length;
+         }
+      }, level, pool, threads);
+   }
+   
+   /**
+    * finish the current entry, if there is one
+    */
+   void closeEntry() throws IOException
+   {
+      if(entry == null)
+      {
+         return;
+      }
+      entry.finish();
+      final long crc = entry.getCrc();
+      final long size = entry.getBytesIn();
+      final long compressed = entry.getBytesOut();
+      entry = null;
+      entryCrcs.add(crc);
+      entrySizes.add(size);
+      entryCompressedSizes.add(compressed);
+      
+      writeInt(_DATA_DESCRIPTOR);
+      writeInt((int) crc);
+      if(size >= _MAX_32 || compressed >= _MAX_32)
+      {
+         writeLong(compressed);
+         writeLong(size);
+      }
+      else
+      {
+         writeInt((int) compressed);
+         writeInt((int) size);
+      }
+   }
+   
+   public void write(final int b) throws IOException
+   {
+      entry.write(b);
+   }
+   
+   public void write(final byte[] b, final int offset, final int length) throws IOException
+   {
+      entry.write(b, offset, length);
+   }
+   
+   /**
+    * finish the current entry, write the central directory and close the
+    * underlying stream
+    */
+   public void close() throws IOException
+   {
+      if(closed)
+      {
+         return;
+      }
+      closed = true;
+      try
+      {
+         closeEntry();
+         writeCentralDirectory();
+         out.flush();
+      }
+      finally
+      {
+         if(pool != null)
+         {
+            pool.shutdownNow();
+         }
+         out.close();
+      }
+   }
+   
+   /**
+    * stop compressing and close the underlying stream, without finishing the
+    * zip file (which is left incomplete). This does nothing if the stream is
+    * already closed.
+    */
+   void abort() throws IOException
+   {
+      if(closed)
+      {
+         return;
+      }
+      closed = true;
+      if(pool != null)
+      {
+         pool.shutdownNow();
+      }
+      out.close();
+   }
+   
+   private void writeCentralDirectory() throws IOException
+   {
+      final long start = position;
+      boolean zip64 = entryNames.size() >= 0xFFFF;
+      for(int i = 0; i < entryNames.size(); i++)
+      {
+         final byte[] n = entryNames.get(i);
+         final long size = entrySizes.get(i);
+         final long compressed = entryCompressedSizes.get(i);
+         final long offset = entryOffsets.get(i);
+         final boolean bigSize = size >= _MAX_32;
+         final boolean bigCompressed = compressed >= _MAX_32;
+         final boolean bigOffset = offset >= _MAX_32;
+         final int extra = (bigSize ? 8 : 0) + (bigCompressed ? 8 : 0) + (bigOffset ? 8 : 0);
+         zip64 |= extra > 0;
+         
+         writeInt(_CENTRAL_HEADER);
+         writeShort(extra > 0 ? _VERSION_ZIP64 : _VERSION);
+         writeShort(extra > 0 ? _VERSION_ZIP64 : _VERSION);
+         writeShort(_FLAGS);
+         writeShort(_DEFLATED);
+         writeInt(dosTime);
+         writeInt((int) (long) entryCrcs.get(i));
+         writeInt(bigCompressed ? (int) _MAX_32 : (int) compressed);
+         writeInt(bigSize ? (int) _MAX_32 : (int) size);
+         writeShort(n.length);
+         writeShort(extra > 0 ? extra + 4 : 0);
+         writeShort(0);
+         writeShort(0);
+         writeShort(0);
+         writeInt(0);
+         writeInt(bigOffset ? (int) _MAX_32 : (int) offset);
+         writeBytes(n);
+         if(extra > 0)
+         {
+            writeShort(_ZIP64_EXTRA);
+            writeShort(extra);
+            if(bigSize)
+            {
+               writeLong(size);
+            }
+            if(bigCompressed)
+            {
+               writeLong(compressed);
+            }
+            if(bigOffset)
+            {
+               writeLong(offset);
+            }
+         }
+      }
+      final long length = position - start;
+      zip64 |= start >= _MAX_32 || length >= _MAX_32;
+      
+      if(zip64)
+      {
+         final long end64 = position;
+         writeInt(_ZIP64_END);
+         writeLong(44);
+         writeShort(_VERSION_ZIP64);
+         writeShort(_VERSION_ZIP64);
+         writeInt(0);
+         writeInt(0);
+         writeLong(entryNames.size());
+         writeLong(entryNames.size());
+         writeLong(length);
+         writeLong(start);
+         
+         writeInt(_ZIP64_LOCATOR);
+         writeInt(0);
+         writeLong(end64);
+         writeInt(1);
+      }
+      writeInt(_END);
+      writeShort(0);
+      writeShort(0);
+      writeShort(Math.min(entryNames.size(), 0xFFFF));
+      writeShort(Math.min(entryNames.size(), 0xFFFF));
+      writeInt(length >= _MAX_32 ? (int) _MAX_32 : (int) length);
+      writeInt(start >= _MAX_32 ? (int) _MAX_32 : (int) start);
+      writeShort(0);
+   }
+   
+   private void writeBytes(final byte[] b) throws IOException
+   {
+      out.write(b, 0, b.length);
+      position += b.length;
+   }
+   
+   private void writeShort(final int v) throws IOException
+   {
+      out.write(v & 0xFF);
+      out.write((v >>> 8) & 0xFF);
+      position += 2;
+   }
+   
+   private void writeInt(final int v) throws IOException
+   {
+      writeShort(v & 0xFFFF);
+      writeShort((v >>> 16) & 0xFFFF);
+   }
+   
+   private void writeLong(final long v) throws IOException
+   {
+      writeInt((int) v);
+      writeInt((int) (v >>> 32));
+   }
+   
+   private final OutputStream out;
+   private final int level;
+   private final int threads;
+   private final ExecutorService pool;
+   private final int dosTime;
+   
+   private GridRipperParallelDeflater entry = null;
+   private long position = 0;
+   private boolean closed = false;
+   
+   private final ArrayList<byte[]> entryNames = new ArrayList<byte[]>();
+   private final ArrayList<Long> entryOffsets = new ArrayList<Long>();
+   private final ArrayList<Long> entryCrcs = new ArrayList<Long>();
+   private final ArrayList<Long> entrySizes = new ArrayList<Long>();
+   private final ArrayList<Long> entryCompressedSizes = new ArrayList<Long>();
+   
+   private static final Charset _UTF8 = Charset.forName("UTF-8");
+   private static final long _MAX_32 = 0xFFFFFFFFL;
+   
+   private static final int _LOCAL_HEADER = 0x04034b50;
+   private static final int _DATA_DESCRIPTOR = 0x08074b50;
+   private static final int _CENTRAL_HEADER = 0x02014b50;
+   private static final int _ZIP64_END = 0x06064b50;
+   private static final int _ZIP64_LOCATOR = 0x07064b50;
+   private static final int _END = 0x06054b50;
+   private static final int _ZIP64_EXTRA = 0x0001;
+   
+   private static final int _VERSION = 20;
+   private static final int _VERSION_ZIP64 = 45;
+   /**
+    * a data descriptor follows the data (bit 3); the name is UTF-8 (bit 11)
+    */
+   private static final int _FLAGS = 0x0808;
+   private static final int _DEFLATED = 8;
+}
@@ -0,0 +1,130 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * a PDF in a zip archive. The entry is read straight out of the archive when
+ * the PDF is loaded, so the archive does not have to be unzipped first. PDFBox
+ * needs to move around in a PDF, so the PDF is copied into PDFBox's scratch
+ * buffer as it is read: into memory, or (past the memory budget, see
+ * GridRipperController.setMemoryBudget) into a scratch file.
+ * 
+ * The logical name of the PDF is the path of the archive, then "!/", then the
+ * name of the entry (as in a jar: URL), such as /a/c.zip!/d/e.pdf.
+ * 
+ * The sources of an archive share one ZipFile, which is safe to read from
+ * several threads at once, and which is closed by whoever opened it, once the
+ * run is done.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+class GridRipperZipSource implements GridRipperSource
+{
+   GridRipperZipSource(final ZipFile zip, final ZipEntry entry)
+   {
+      this.zip = zip;
+      this.entry = entry;
+      final String name = entry.getName();
+      final int slash = name.lastIndexOf('/');
+      parent = zip.getName() + _SEPARATOR + (slash == -1 ? "" : name.substring(0, slash));
+      this.name = name.substring(slash + 1);
+   }
+   
+   /**
+    * add a source for each PDF in a zip archive (in any of its directories), in
+    * alphabetical order
+    * 
+    * @return the archive, which must be closed once the sources are done with
+    */
+   static ZipFile addEntries(final File archive, final List<GridRipperSource> sources) throws IOException
+   {
+      final ZipFile zip = new ZipFile(archive);
+      final ArrayList<ZipEntry> entries = new ArrayList<ZipEntry>();
+      final Enumeration<? extends ZipEntry> e = zip.entries();
+      while(e.hasMoreElements())
+      {
+         final ZipEntry entry = e.nextElement();
+         if(!entry.isDirectory() && entry.getName().toLowerCase().endsWith(".pdf"))
+         {
+            entries.add(entry);
+         }
+      }
+      Collections.sort(entries, new Comparator<ZipEntry>()
+      {
+         public int compare(final ZipEntry a, final ZipEntry b)
+         {
+            return a.getName().compareTo(b.getName());
+         }
+      });
+      for(final ZipEntry entry : entries)
+      {
+         sources.add(new GridRipperZipSource(zip, entry));
+      }
+      return zip;
+   }
+   
+   public String getPath()
+   {
+      return zip.getName() + _SEPARATOR + entry.getName();
+   }
+   
+   public String getParent()
+   {
+      return parent;
+   }
+   
+   public String getName()
+   {
+      return name;
+   }
+   
+   public PDDocument load(final MemoryUsageSetting memory) throws IOException
+   {
+      final InputStream in = zip.getInputStream(entry);
+      try
+      {
+         return PDDocument.load(in, memory);
+      }
+      finally
+      {
+         in.close();
+      }
+   }
+   
+   public InputStream openStream() throws IOException
+   {
+      return zip.getInputStream(entry);
+   }
+   
+   private final ZipFile zip;
+   private final ZipEntry entry;
+   private final String parent;
+   private final String name;
+   
+   private static final String _SEPARATOR = "!/";
+}
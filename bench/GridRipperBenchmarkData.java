@@ -0,0 +1,158 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.text.TextPosition;
+import org.apache.pdfbox.util.Matrix;
+
+/**
+ * builds the synthetic input used by the benchmarks: lines of TextPositions
+ * that look like the rows of a timesheet (short phrases separated by wide
+ * gaps), and pages of rows made from them. Everything is seeded, so
+ * every run benchmarks the same data.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+class GridRipperBenchmarkData
+{
+   /**
+    * @param glyphs
+    *           (approximately) the number of TextPositions on the line
+    * @param seed
+    *           the seed for the random widths and gaps
+    * @return a line of text, as PDFBox would hand it to writeString()
+    */
+   static List<TextPosition> line(final int glyphs, final long seed)
+   {
+      final Random r = new Random(seed);
+      final ArrayList<TextPosition> line = new ArrayList<TextPosition>(glyphs);
+      final float y = 100 + r.nextInt(600);
+      float x = 36;
+      int cell = 0;
+      while(line.size() < glyphs)
+      {
+         final String word = _CELLS[cell++ % _CELLS.length];
+         for(int i = 0; i < word.length() && line.size() < glyphs; i++)
+         {
+            final char c = word.charAt(i);
+            final float width = (c == ' ' ? 2.5f : 5.0f + r.nextFloat()) * _FONT_SIZE / 10;
+            line.add(glyph(c, x, y, width));
+            x += width;
+         }
+         // the gap between two cells is wider than twice the width of a space
+         x += 12 + r.nextInt(30);
+      }
+      return line;
+   }
+   
+   /**
+    * @param rows
+    *           the number of rows on the page
+    * @param seed
+    *           the seed for the random positions
+    * @return rows scattered over a page, in no particular order, with several
+    *         rows on each (slightly uneven) line
+    */
+   static Rows rows(final int rows, final long seed)
+   {
+      final Random r = new Random(seed);
+      final Rows rr = new Rows(rows);
+      final int lines = Math.max(1, rows / 8);
+      for(int i = 0; i < rows; i++)
+      {
+         rr.content[i] = _CELLS[r.nextInt(_CELLS.length)];
+         rr.yStart[i] = 36 + (720.0f * r.nextInt(lines)) / lines + r.nextFloat() * 1.5f;
+         rr.xStart[i] = 36 + r.nextFloat() * 540;
+         rr.xEnd[i] = rr.xStart[i] + 5.0f * rr.content[i].length();
+      }
+      return rr;
+   }
+   
+   /**
+    * the columns of a page of rows, to be added to a GridRipperPage
+    */
+   static class Rows
+   {
+      Rows(final int rows)
+      {
+         yStart = new float[rows];
+         xStart = new float[rows];
+         xEnd = new float[rows];
+         content = new String[rows];
+      }
+      
+      void addTo(final GridRipperPage page)
+      {
+         for(int i = 0; i < content.length; i++)
+         {
+            page.add(yStart[i], xStart[i], xEnd[i], _FONT_SIZE, 0, content[i]);
+         }
+      }
+      
+      final float[] yStart;
+      final float[] xStart;
+      final float[] xEnd;
+      final String[] content;
+   }
+   
+   private static TextPosition glyph(final char c, final float x, final float y, final float width)
+   {
+      return glyph(_UNICODE[c], x, y, width);
+   }
+   
+   private static TextPosition glyph(final String unicode, final float x, final float y, final float width)
+   {
+      return new TextPosition(0, 612, 792, new Matrix(_FONT_SIZE, 0, 0, _FONT_SIZE, x, y), x + width, y, _FONT_SIZE,
+            width, 2.5f, unicode, new int[] { unicode.charAt(0) }, _FONT, _FONT_SIZE, (int) _FONT_SIZE);
+   }
+   
+   /**
+    * an output stream that discards everything, so that the writer benchmarks
+    * measure the writers and not the disk.
+    */
+   static final OutputStream _NULL_STREAM = new OutputStream()
+   {
+      public void write(final int b) throws IOException
+      {
+         // discard.
+      }
+      
+      public void write(final byte[] b, final int off, final int len) throws IOException
+      {
+         // discard.
+      }
+   };
+   
+   static final String[] _CELLS = { "Emp 1042", "Smith, J", "08:00", "17:30", "9.50", "OT", "\"Lunch\" <30m>",
+         "R&D Dept.", "Mon 03/12/2018", "Approved" };
+   
+   private static final float _FONT_SIZE = 10.0f;
+   private static final PDFont _FONT = PDType1Font.HELVETICA;
+   private static final String[] _UNICODE = new String[128];
+   static
+   {
+      for(int i = 0; i < _UNICODE.length; i++)
+      {
+         _UNICODE[i] = String.valueOf((char) i);
+      }
+   }
+}
@@ -0,0 +1,204 @@
+import java.io.File;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.apache.pdfbox.text.TextPosition;
+
+import gridripper.bench.GridRipperWorkload;
+
+/**
+ * the operations measured by the benchmarks in gridripper.bench. Each workload
+ * does all of its setup when it is created, so that run() only does the work
+ * being measured.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+public class GridRipperBenchmarkWorkloads
+{
+   /**
+    * @param name
+    *           segmentation, page, writeInt, writeFloat, writeText or writeRow
+    * @param parameter
+    *           for segmentation: "mode/glyphs" (e.g. "0/40"); for page: the
+    *           number of rows; for the writers: csv, ods or print
+    * @return the workload
+    */
+   public static GridRipperWorkload create(final String name, final String parameter) throws Exception
+   {
+      if(name.equals("segmentation"))
+      {
+         final String[] p = parameter.split("/");
+         return new Segmentation(Integer.parseInt(p[0]), Integer.parseInt(p[1]));
+      }
+      else if(name.equals("page"))
+      {
+         return new Page(Integer.parseInt(parameter));
+      }
+      else
+      {
+         return new Writer(name, parameter);
+      }
+   }
+   
+   /**
+    * breaks one line of text into phrases/words/characters. The reader holds
+    * its pages instead of writing them, and each operation ends the page, so
+    * the measurement also includes sorting the handful of rows made from the
+    * line.
+    */
+   static class Segmentation implements GridRipperWorkload
+   {
+      Segmentation(final int mode, final int glyphs) throws Exception
+      {
+         final GridRipperController controller = new GridRipperController(new File[0],
+               new GridRipperPrintWriter(new PrintStream(GridRipperBenchmarkData._NULL_STREAM)), mode);
+         result = new GridRipperFileResult();
+         reader = new GridRipperPdfReader(mode, controller, result);
+         line = GridRipperBenchmarkData.line(glyphs, 42);
+      }
+      
+      public Object run() throws Exception
+      {
+         reader.writeString("", line);
+         reader.endPage(null);
+         final GridRipperPage page = result.getPages().get(0);
+         result.getPages().clear();
+         return page;
+      }
+      
+      public void close()
+      {
+         // nothing to release.
+      }
+      
+      private final GridRipperFileResult result;
+      private final GridRipperPdfReader reader;
+      private final List<TextPosition> line;
+   }
+   
+   /**
+    * sorts a page and computes y_smooth. Each operation fills the page with the
+    * same rows, in the same (unsorted) order, and then finishes it.
+    */
+   static class Page implements GridRipperWorkload
+   {
+      Page(final int rows)
+      {
+         unsorted = GridRipperBenchmarkData.rows(rows, 42);
+         page = new GridRipperPage(rows);
+      }
+      
+      public Object run()
+      {
+         page.clear();
+         unsorted.addTo(page);
+         page.finish();
+         return page;
+      }
+      
+      public void close()
+      {
+         page.clear();
+      }
+      
+      private final GridRipperBenchmarkData.Rows unsorted;
+      private final GridRipperPage page;
+   }
+   
+   /**
+    * calls one of the cell-by-cell methods of a GridRipperWriter. The file
+    * writers write to the null device and the print writer writes to a stream
+    * that discards everything, so the measurement is the cost of encoding, not
+    * of the disk.
+    */
+   static class Writer implements GridRipperWorkload
+   {
+      Writer(final String method, final String writer)
+      {
+         final File nul = new File(System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null");
+         if(writer.equals("csv"))
+         {
+            out = new GridRipperCsvWriter(nul);
+         }
+         else if(writer.equals("ods"))
+         {
+            out = new GridRipperOdsStreamWriter(nul);
+         }
+         else
+         {
+            out = new GridRipperPrintWriter(new PrintStream(GridRipperBenchmarkData._NULL_STREAM));
+         }
+         out.open(new GridRipperController(new File[0], out, GridRipperGUI._MODE_PHRASES));
+         out.startRow();
+         this.method = method.equals("writeInt") ? _INT
+               : (method.equals("writeFloat") ? _FLOAT : (method.equals("writeText") ? _TEXT : _ROW));
+      }
+      
+      public Object run()
+      {
+         i++;
+         if(method == _INT)
+         {
+            out.writeInt(i);
+         }
+         else if(method == _FLOAT)
+         {
+            out.writeFloat(123.456f + (i & 1023));
+         }
+         else if(method == _TEXT)
+         {
+            out.writeText(GridRipperBenchmarkData._CELLS[i % GridRipperBenchmarkData._CELLS.length]);
+         }
+         else
+         {
+            // a whole row, with the same columns that the controller writes by
+            // default.
+            final float y = 100.25f + (i & 511);
+            out.endRow();
+            out.startRow();
+            out.writeInt(i);
+            out.writeInt(1);
+            out.writeInt(3);
+            out.writeInt(3);
+            out.writeFloat(y);
+            out.writeFloat(y);
+            out.writeFloat(72.5f);
+            out.writeFloat(118.03125f);
+            out.writeFloat(10.0f);
+            out.writeInt(0);
+            out.writeText(GridRipperBenchmarkData._CELLS[i % GridRipperBenchmarkData._CELLS.length]);
+         }
+         return out;
+      }
+      
+      public void close()
+      {
+         out.endRow();
+         out.close();
+      }
+      
+      private final GridRipperWriter out;
+      private final int method;
+      private int i = 0;
+      
+      private static final int _INT = 0;
+      private static final int _FLOAT = 1;
+      private static final int _TEXT = 2;
+      private static final int _ROW = 3;
+   }
+}
@@ -0,0 +1,287 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+/**
+ * generates synthetic PDFs that look like the documents GridRipper is used on,
+ * so that extraction can be tuned and measured without using real (client)
+ * documents. Two kinds of PDF can be generated: "timesheet" (a header and
+ * rows of short cells - names, dates, times, hours - on slightly uneven
+ * lines) and "table" (a dense grid of small numbers). Everything is seeded, so
+ * the same arguments always generate the same PDFs.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+public class GridRipperCorpusGenerator
+{
+   /**
+    * 
+    * @param args
+    *           the output directory, followed by options; run with no
+    *           arguments for the list of options
+    */
+   public static void main(String[] args) throws IOException
+   {
+      if(args.length == 0)
+      {
+         System.err.println(_USAGE);
+         System.exit(64);
+      }
+      final File dir = new File(args[0]);
+      String type = _TIMESHEET;
+      int files = 4;
+      int pages = 25;
+      int glyphs = 3000;
+      String[] fonts = { "Helvetica", "Courier", "Times-Roman" };
+      int[] rotations = { 0 };
+      long seed = 42;
+      for(int i = 1; i < args.length; i++)
+      {
+         final String a = args[i];
+         if(a.equals("--type"))
+         {
+            type = args[++i];
+         }
+         else if(a.equals("--files"))
+         {
+            files = Integer.parseInt(args[++i]);
+         }
+         else if(a.equals("--pages"))
+         {
+            pages = Integer.parseInt(args[++i]);
+         }
+         else if(a.equals("--glyphs"))
+         {
+            glyphs = Integer.parseInt(args[++i]);
+         }
+         else if(a.equals("--fonts"))
+         {
+            fonts = args[++i].split(",");
+         }
+         else if(a.equals("--rotations"))
+         {
+            final String[] r = args[++i].split(",");
+            rotations = new int[r.length];
+            for(int j = 0; j < r.length; j++)
+            {
+               rotations[j] = Integer.parseInt(r[j]);
+            }
+         }
+         else if(a.equals("--seed"))
+         {
+            seed = Long.parseLong(args[++i]);
+         }
+         else
+         {
+            System.err.println("Unknown option: " + a);
+            System.err.println(_USAGE);
+            System.exit(64);
+         }
+      }
+      
+      dir.mkdirs();
+      final PDFont[] ff = new PDFont[fonts.length];
+      for(int i = 0; i < fonts.length; i++)
+      {
+         ff[i] = font(fonts[i]);
+      }
+      for(int i = 0; i < files; i++)
+      {
+         final File f = new File(dir, type + "-" + (i + 1) + ".pdf");
+         generate(f, type, pages, glyphs, ff, rotations, seed + i);
+         System.err.println("Generated " + f);
+      }
+   }
+   
+   /**
+    * generate one PDF
+    * 
+    * @param f
+    *           the PDF to create
+    * @param type
+    *           timesheet or table
+    * @param pages
+    *           the number of pages
+    * @param glyphs
+    *           (approximately) the number of characters on each page
+    * @param fonts
+    *           the fonts to use; each page uses the next font in the list
+    * @param rotations
+    *           the page rotations to use (0, 90, 180 or 270); each page uses
+    *           the next rotation in the list
+    * @param seed
+    *           the seed for the random content and positions
+    * @throws IOException
+    */
+   static void generate(final File f, final String type, final int pages, final int glyphs, final PDFont[] fonts,
+         final int[] rotations, final long seed) throws IOException
+   {
+      final Random r = new Random(seed);
+      final PDDocument doc = new PDDocument();
+      try
+      {
+         for(int p = 0; p < pages; p++)
+         {
+            final PDPage page = new PDPage(PDRectangle.LETTER);
+            page.setRotation(rotations[p % rotations.length]);
+            doc.addPage(page);
+            final PDPageContentStream cs = new PDPageContentStream(doc, page);
+            if(type.equals(_TABLE))
+            {
+               table(cs, fonts[p % fonts.length], glyphs, r);
+            }
+            else
+            {
+               timesheet(cs, fonts[p % fonts.length], glyphs, p, r);
+            }
+            cs.close();
+         }
+         doc.save(f);
+      }
+      finally
+      {
+         doc.close();
+      }
+   }
+   
+   /**
+    * a header, then one row per shift: employee, date, time in, time out,
+    * hours, and a note. Each row is about 60 characters, and the rows are
+    * spaced to fit on the page.
+    */
+   private static void timesheet(final PDPageContentStream cs, final PDFont font, final int glyphs, final int page,
+         final Random r) throws IOException
+   {
+      final int rows = Math.max(1, glyphs / 60);
+      final float spacing = Math.min(18, 680.0f / rows);
+      final float size = Math.max(2, Math.min(10, spacing * 0.8f));
+      text(cs, font, size + 2, 36, 756, "TIMESHEET - PAY PERIOD " + (page + 1) + " - CONFIDENTIAL");
+      final float[] columns = { 36, 150, 240, 300, 360, 420 };
+      final String[] header = { "Employee", "Date", "In", "Out", "Hours", "Notes" };
+      for(int c = 0; c < columns.length; c++)
+      {
+         text(cs, font, size, columns[c], 730, header[c]);
+      }
+      for(int i = 0; i < rows; i++)
+      {
+         // the cells of a row are not quite on the same line, the way they
+         // are in scanned and OCRed documents.
+         final float y = 720 - (i + 1) * spacing;
+         final int in = 6 * 60 + r.nextInt(4 * 60);
+         final int out = in + 4 * 60 + r.nextInt(7 * 60);
+         final String hours = (out - in) / 60 + "." + ((out - in) % 60 * 100 / 60);
+         final String[] cells = { _NAMES[r.nextInt(_NAMES.length)], date(r), time(in), time(out), hours,
+               _NOTES[r.nextInt(_NOTES.length)] };
+         for(int c = 0; c < columns.length; c++)
+         {
+            text(cs, font, size, columns[c] + r.nextFloat(), y + r.nextFloat() * 1.2f, cells[c]);
+         }
+      }
+   }
+   
+   /**
+    * a dense grid of 12 columns of small numbers, with as many rows as it
+    * takes to reach the number of glyphs
+    */
+   private static void table(final PDPageContentStream cs, final PDFont font, final int glyphs, final Random r)
+         throws IOException
+   {
+      final int columns = 12;
+      final int rows = Math.max(1, glyphs / (columns * 6));
+      final float spacing = Math.min(14, 720.0f / rows);
+      final float size = Math.max(2, Math.min(8, spacing * 0.85f));
+      for(int i = 0; i < rows; i++)
+      {
+         final float y = 756 - i * spacing;
+         for(int c = 0; c < columns; c++)
+         {
+            final String cell = r.nextInt(100000) + (c == 0 ? "" : "." + r.nextInt(10));
+            text(cs, font, size, 36 + c * 46, y, cell);
+         }
+      }
+   }
+   
+   private static void text(final PDPageContentStream cs, final PDFont font, final float size, final float x,
+         final float y, final String s) throws IOException
+   {
+      cs.beginText();
+      cs.setFont(font, size);
+      cs.newLineAtOffset(x, y);
+      cs.showText(s);
+      cs.endText();
+   }
+   
+   private static String date(final Random r)
+   {
+      final int m = 1 + r.nextInt(12);
+      final int d = 1 + r.nextInt(28);
+      return (m < 10 ? "0" : "") + m + "/" + (d < 10 ? "0" : "") + d + "/2018";
+   }
+   
+   private static String time(final int minutes)
+   {
+      final int h = minutes / 60;
+      final int m = minutes % 60;
+      return (h < 10 ? "0" : "") + h + ":" + (m < 10 ? "0" : "") + m;
+   }
+   
+   /**
+    * @param name
+    *           the name of one of the 14 standard PDF fonts (e.g. Helvetica,
+    *           Courier-Bold, Times-Roman)
+    */
+   private static PDFont font(final String name)
+   {
+      final PDType1Font[] standard = { PDType1Font.HELVETICA, PDType1Font.HELVETICA_BOLD,
+            PDType1Font.HELVETICA_OBLIQUE, PDType1Font.HELVETICA_BOLD_OBLIQUE, PDType1Font.COURIER,
+            PDType1Font.COURIER_BOLD, PDType1Font.COURIER_OBLIQUE, PDType1Font.COURIER_BOLD_OBLIQUE,
+            PDType1Font.TIMES_ROMAN, PDType1Font.TIMES_BOLD, PDType1Font.TIMES_ITALIC, PDType1Font.TIMES_BOLD_ITALIC };
+      for(final PDType1Font f : standard)
+      {
+         if(f.getBaseFont().equalsIgnoreCase(name))
+         {
+            return f;
+         }
+      }
+      throw new IllegalArgumentException("Not a standard font: " + name);
+   }
+   
+   private static final String _TIMESHEET = "timesheet";
+   private static final String _TABLE = "table";
+   
+   private static final String[] _NAMES = { "Smith, J.", "Garcia, M.", "Nguyen, T.", "O'Brien, K.", "Patel, R.",
+         "Kowalski, A.", "Johnson, D.", "Lee, S." };
+   private static final String[] _NOTES = { "", "OT", "Lunch <30m>", "\"Approved\"", "R&D", "Sick", "Holiday",
+         "Meal break waived" };
+   
+   private static final String _USAGE = "Usage: java GridRipperCorpusGenerator OUTPUT_DIRECTORY [options]\n"
+         + "  --type timesheet|table     the kind of PDF to generate (default: timesheet)\n"
+         + "  --files N                  the number of PDFs (default: 4)\n"
+         + "  --pages N                  the number of pages in each PDF (default: 25)\n"
+         + "  --glyphs N                 about how many characters are on each page (default: 3000)\n"
+         + "  --fonts A,B,...            standard PDF fonts, used in turn on each page (default: Helvetica,Courier,Times-Roman)\n"
+         + "  --rotations A,B,...        page rotations, used in turn on each page (default: 0)\n"
+         + "  --seed N                   the random seed (default: 42)";
+}
@@ -0,0 +1,255 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * runs GridRipperController end to end over a corpus of PDFs (for example, one
+ * made by GridRipperCorpusGenerator), once for each output format and mode,
+ * and records pages/sec, rows/sec, peak heap and output bytes. The results are
+ * compared to a stored baseline, and the harness exits with a non-zero code if
+ * the throughput of any run has dropped by more than the tolerance.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+public class GridRipperThroughputHarness
+{
+   /**
+    * 
+    * @param args
+    *           the corpus directory and the baseline file, followed by options;
+    *           run with no arguments for the list of options
+    */
+   public static void main(String[] args) throws IOException
+   {
+      if(args.length < 2)
+      {
+         System.err.println(_USAGE);
+         System.exit(_EXIT_USAGE);
+      }
+      final File corpus = new File(args[0]);
+      final File baselineFile = new File(args[1]);
+      boolean save = false;
+      int runs = 3;
+      float tolerance = 0.10f;
+      int threads = 1;
+      String[] formats = { "csv", "ods" };
+      for(int i = 2; i < args.length; i++)
+      {
+         final String a = args[i];
+         if(a.equals("--save-baseline"))
+         {
+            save = true;
+         }
+         else if(a.equals("--runs"))
+         {
+            runs = Integer.parseInt(args[++i]);
+         }
+         else if(a.equals("--tolerance"))
+         {
+            tolerance = Float.parseFloat(args[++i]);
+         }
+         else if(a.equals("--threads"))
+         {
+            threads = Integer.parseInt(args[++i]);
+         }
+         else if(a.equals("--formats"))
+         {
+            formats = args[++i].split(",");
+         }
+         else
+         {
+            System.err.println("Unknown option: " + a);
+            System.err.println(_USAGE);
+            System.exit(_EXIT_USAGE);
+         }
+      }
+      
+      final File[] files = corpus.listFiles();
+      final ArrayList<File> pdfs = new ArrayList<File>();
+      if(files != null)
+      {
+         Arrays.sort(files);
+         for(final File f : files)
+         {
+            if(f.getName().toLowerCase().endsWith(".pdf"))
+            {
+               pdfs.add(f);
+            }
+         }
+      }
+      if(pdfs.isEmpty())
+      {
+         System.err.println("No PDFs in " + corpus);
+         System.exit(_EXIT_USAGE);
+      }
+      
+      final Properties baseline = new Properties();
+      if(!save)
+      {
+         if(!baselineFile.exists())
+         {
+            System.err.println("No baseline at " + baselineFile + " (run with --save-baseline to create one)");
+            System.exit(_EXIT_USAGE);
+         }
+         final InputStream in = new FileInputStream(baselineFile);
+         baseline.load(in);
+         in.close();
+      }
+      
+      final Properties results = new Properties();
+      boolean regression = false;
+      final File target = File.createTempFile("gridripper-harness", ".out");
+      target.deleteOnExit();
+      System.out.println(String.format("%-20s %12s %12s %12s %14s %10s", "run", "pages/sec", "rows/sec", "peak MB",
+            "output bytes", "vs base"));
+      for(final String format : formats)
+      {
+         for(int mode = 0; mode < _MODES.length; mode++)
+         {
+            final String key = format + "." + _MODES[mode];
+            // the first run warms up the JIT and is not counted.
+            run(pdfs, format, mode, threads, target);
+            final Result best = new Result();
+            for(int i = 0; i < runs; i++)
+            {
+               final Result r = run(pdfs, format, mode, threads, target);
+               if(r.pagesPerSecond() > best.pagesPerSecond())
+               {
+                  best.nanos = r.nanos;
+               }
+               best.pages = r.pages;
+               best.rows = r.rows;
+               best.peakHeap = Math.max(best.peakHeap, r.peakHeap);
+               best.outputBytes = r.outputBytes;
+            }
+            results.setProperty(key + ".pagesPerSec", Double.toString(best.pagesPerSecond()));
+            results.setProperty(key + ".rowsPerSec", Double.toString(best.rowsPerSecond()));
+            results.setProperty(key + ".peakHeapBytes", Long.toString(best.peakHeap));
+            results.setProperty(key + ".outputBytes", Long.toString(best.outputBytes));
+            
+            String comparison = "";
+            final String base = baseline.getProperty(key + ".pagesPerSec");
+            if(base != null)
+            {
+               final double change = best.pagesPerSecond() / Double.parseDouble(base) - 1;
+               comparison = String.format("%+.1f%%", change * 100);
+               if(change < -tolerance)
+               {
+                  comparison += " REGRESSION";
+                  regression = true;
+               }
+            }
+            System.out.println(String.format("%-20s %12.1f %12.1f %12.1f %14d %10s", key, best.pagesPerSecond(),
+                  best.rowsPerSecond(), best.peakHeap / 1048576.0, best.outputBytes, comparison));
+         }
+      }
+      
+      if(save)
+      {
+         final OutputStream out = new FileOutputStream(baselineFile);
+         results.store(out, "GridRipper throughput baseline: " + corpus.getAbsolutePath());
+         out.close();
+         System.out.println("Saved the baseline to " + baselineFile);
+      }
+      System.exit(regression ? _EXIT_REGRESSION : 0);
+   }
+   
+   /**
+    * rip the corpus once
+    */
+   private static Result run(final ArrayList<File> pdfs, final String format, final int mode, final int threads,
+         final File target)
+   {
+      System.gc();
+      final ArrayList<MemoryPoolMXBean> heap = new ArrayList<MemoryPoolMXBean>();
+      for(final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+      {
+         if(pool.getType() == MemoryType.HEAP && pool.isValid())
+         {
+            pool.resetPeakUsage();
+            heap.add(pool);
+         }
+      }
+      
+      final GridRipperWriter out = format.equals("csv") ? new GridRipperCsvWriter(target)
+            : new GridRipperOdsStreamWriter(target);
+      final GridRipperController c = new GridRipperController(pdfs.toArray(new File[pdfs.size()]), out, mode);
+      c.setThreadCount(threads);
+      final long start = System.nanoTime();
+      c.run();
+      final Result r = new Result();
+      r.nanos = System.nanoTime() - start;
+      if(out.getErrorStatus() != GridRipperWriter._ERROR_STATUS_NO_ERROR)
+      {
+         System.err.println("The " + format + " run in mode " + mode + " had errors.");
+      }
+      
+      r.pages = c.getPid() + 1;
+      r.rows = c.getId() + 1;
+      r.outputBytes = target.length();
+      for(final MemoryPoolMXBean pool : heap)
+      {
+         r.peakHeap += pool.getPeakUsage().getUsed();
+      }
+      return r;
+   }
+   
+   /**
+    * the measurements from one run
+    */
+   private static class Result
+   {
+      double pagesPerSecond()
+      {
+         return nanos == Long.MAX_VALUE ? 0 : pages * 1e9 / nanos;
+      }
+      
+      double rowsPerSecond()
+      {
+         return nanos == Long.MAX_VALUE ? 0 : rows * 1e9 / nanos;
+      }
+      
+      long nanos = Long.MAX_VALUE;
+      long pages = 0;
+      long rows = 0;
+      long peakHeap = 0;
+      long outputBytes = 0;
+   }
+   
+   private static final String[] _MODES = { "phrases", "words", "characters" };
+   
+   private static final int _EXIT_REGRESSION = 1;
+   private static final int _EXIT_USAGE = 64;
+   
+   private static final String _USAGE = "Usage: java GridRipperThroughputHarness CORPUS_DIRECTORY BASELINE_FILE [options]\n"
+         + "  --save-baseline            record this run as the baseline instead of comparing to it\n"
+         + "  --runs N                   measured runs per format and mode; the fastest is kept (default: 3)\n"
+         + "  --tolerance F              the drop in pages/sec that counts as a regression (default: 0.10)\n"
+         + "  --threads N                the controller's thread count (default: 1)\n"
+         + "  --formats A,B              the output formats to run (default: csv,ods)\n"
+         + "Exit codes: 0 - no regression; 1 - regression; 64 - bad arguments";
+}
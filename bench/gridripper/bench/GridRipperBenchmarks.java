@@ -0,0 +1,58 @@
+package gridripper.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * runs the GridRipper benchmarks. The results are reported in operations per
+ * second, along with the bytes allocated per operation (gc.alloc.rate.norm,
+ * from the GC profiler), and are also saved to bench-results.json.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+public class GridRipperBenchmarks
+{
+   /**
+    * 
+    * @param args
+    *           empty/null: run every benchmark; otherwise, regular expressions
+    *           selecting the benchmarks to run (e.g. "Writer")
+    */
+   public static void main(String[] args) throws RunnerException
+   {
+      final OptionsBuilder options = new OptionsBuilder();
+      if(args == null || args.length == 0)
+      {
+         options.include("gridripper\\.bench\\..*Benchmark");
+      }
+      else
+      {
+         for(final String a : args)
+         {
+            options.include(a);
+         }
+      }
+      final Options o = options.addProfiler(GCProfiler.class).resultFormat(ResultFormatType.JSON)
+            .result("bench-results.json").build();
+      new Runner(o).run();
+   }
+}
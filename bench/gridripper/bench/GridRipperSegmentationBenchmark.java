@@ -0,0 +1,74 @@
+package gridripper.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * benchmarks the way GridRipperPdfReader.writeString() breaks a line of
+ * TextPositions into phrases, words or characters.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GridRipperSegmentationBenchmark
+{
+   @Setup
+   public void setup() throws Exception
+   {
+      workload = GridRipperWorkloadFactory.create("segmentation", mode + "/" + glyphs);
+   }
+   
+   @TearDown
+   public void tearDown()
+   {
+      workload.close();
+   }
+   
+   @Benchmark
+   public Object writeString() throws Exception
+   {
+      return workload.run();
+   }
+   
+   /**
+    * 0 - phrases; 1 - words; 2 - characters
+    */
+   @Param({ "0", "1", "2" })
+   public int mode;
+   
+   /**
+    * the number of TextPositions on the line
+    */
+   @Param({ "40", "400" })
+   public int glyphs;
+   
+   private GridRipperWorkload workload;
+}
@@ -0,0 +1,42 @@
+package gridripper.bench;
+
+/**
+ * one operation of a benchmark. JMH will not generate benchmarks for classes
+ * in the default package, and classes in a named package cannot use the
+ * GridRipper classes directly, so each benchmark asks
+ * GridRipperBenchmarkWorkloads (in the default package) for a workload and then
+ * calls it. The workloads themselves use the package-private GridRipper
+ * classes.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+public interface GridRipperWorkload
+{
+   /**
+    * perform one operation
+    * 
+    * @return a value that depends on the work done, to be consumed by JMH
+    * @throws Exception
+    */
+   public Object run() throws Exception;
+   
+   /**
+    * release anything held by the workload (e.g. close a writer)
+    */
+   public void close();
+}
@@ -0,0 +1,43 @@
+package gridripper.bench;
+
+/**
+ * finds the workloads in GridRipperBenchmarkWorkloads (in the default package,
+ * which cannot be referred to by name from a named package).
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+final class GridRipperWorkloadFactory
+{
+   private GridRipperWorkloadFactory()
+   {
+      // static methods only.
+   }
+   
+   /**
+    * @param name
+    *           the name of the workload (see GridRipperBenchmarkWorkloads)
+    * @param parameter
+    *           the benchmark parameter (mode, size, writer...)
+    * @return the workload
+    */
+   static GridRipperWorkload create(final String name, final String parameter) throws Exception
+   {
+      return (GridRipperWorkload) Class.forName("GridRipperBenchmarkWorkloads")
+            .getMethod("create", String.class, String.class).invoke(null, name, parameter);
+   }
+}
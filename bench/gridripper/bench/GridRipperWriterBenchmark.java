@@ -0,0 +1,73 @@
+package gridripper.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * benchmarks the cell-by-cell methods of each GridRipperWriter, writing to a
+ * null sink. The benchmark method is a parameter (rather than one @Benchmark
+ * per method) so that each writer is set up once per method.
+ * 
+ * Copyright 2017-2018 Michael A. Levy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ * @author Michael
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GridRipperWriterBenchmark
+{
+   @Setup
+   public void setup() throws Exception
+   {
+      workload = GridRipperWorkloadFactory.create(method, writer);
+   }
+   
+   @TearDown
+   public void tearDown()
+   {
+      workload.close();
+   }
+   
+   @Benchmark
+   public Object write() throws Exception
+   {
+      return workload.run();
+   }
+   
+   @Param({ "csv", "ods", "print" })
+   public String writer;
+   
+   /**
+    * writeInt, writeFloat, writeText, or writeRow (a whole row, with the
+    * columns that the controller writes by default)
+    */
+   @Param({ "writeInt", "writeFloat", "writeText", "writeRow" })
+   public String method;
+   
+   private GridRipperWorkload workload;
+}